@@ -0,0 +1,29 @@
+package id.rockierocker.image.analysis;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Result of {@link BackgroundStatusClassifier}: the status plus the three metrics it was derived from.
+ */
+@Getter
+@Builder
+@ToString
+public class BackgroundAnalysis {
+
+    private final BackgroundStatus status;
+
+    private final int width;
+    private final int height;
+    /* 1 = every pixel, n = every n-th row and column of the interior */
+    private final int sampleStep;
+
+    private final boolean transparent;
+    /* share of sampled pixels with alpha < 250 */
+    private final double transparentRatio;
+    /* mean blue-channel difference to the right and lower neighbour, same signal as ImageUtil.edgeSharpnessScore */
+    private final double edgeSharpness;
+    /* variance of the border blue channel, same signal as ImageUtil.borderColorVariance */
+    private final double borderColorVariance;
+}
@@ -0,0 +1,28 @@
+package id.rockierocker.image.analysis;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Dominant background color found by {@link BackgroundColorDetector}.
+ */
+@Getter
+@Builder
+@ToString
+public class BackgroundColor {
+
+    /* 0xRRGGBB, mean of the samples in the dominant cluster */
+    private final int rgb;
+    /* "#RRGGBB", same format as ImageUtil.getHexFast */
+    private final String hex;
+    /* 0..1, share of opaque border samples that fall in the dominant cluster */
+    private final double confidence;
+    private final int sampleCount;
+    /* share of border samples with alpha < 128, the background is likely already removed when high */
+    private final double transparentRatio;
+
+    public boolean isConfident(double minConfidence) {
+        return confidence >= minConfidence;
+    }
+}
@@ -0,0 +1,181 @@
+package id.rockierocker.image.analysis;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * Finds the dominant background color from the image border.
+ * <p>
+ * Border bands and the four corner squares are sampled with bulk row reads into an
+ * {@link IntHistogram} of 5-bit-per-channel quantized RGB. Neighbouring bins (one quantization
+ * step apart) are clustered so gradients and JPEG noise on a flat background count as one color.
+ * The confidence is the share of opaque samples inside the dominant cluster; the reported color
+ * is the exact mean of those samples.
+ */
+public class BackgroundColorDetector {
+
+    /* border band thickness as a fraction of the short side */
+    private static final double BAND_RATIO = 0.02;
+    private static final int MAX_BAND = 16;
+    private static final int MAX_SAMPLES_PER_EDGE = 2048;
+    private static final int QUANT_SHIFT = 3;
+    /* candidate seeds tried when picking the densest cluster */
+    private static final int SEED_CANDIDATES = 8;
+
+    public static BackgroundColor detect(BufferedImage image) {
+        int band = (int) Math.round(Math.min(image.getWidth(), image.getHeight()) * BAND_RATIO);
+        return detect(image, Math.max(1, Math.min(MAX_BAND, band)));
+    }
+
+    public static BackgroundColor detect(BufferedImage image, int band) {
+        Sampler sampler = new Sampler(image, band);
+        sampler.sampleBorder();
+        sampler.sampleCorners();
+
+        int total = sampler.opaque;
+        int all = sampler.opaque + sampler.transparent;
+        double transparentRatio = all == 0 ? 0 : sampler.transparent / (double) all;
+        if (total == 0) {
+            return BackgroundColor.builder()
+                    .hex("#000000")
+                    .sampleCount(all)
+                    .transparentRatio(transparentRatio)
+                    .build();
+        }
+
+        IntHistogram histogram = sampler.histogram;
+        int seed = densestSeed(histogram);
+        int clusterCount = neighbourhoodCount(histogram, seed);
+
+        // exact mean of the samples in the dominant cluster
+        long sumR = 0, sumG = 0, sumB = 0, n = 0;
+        for (int i = 0; i < sampler.sampleSize; i++) {
+            int rgb = sampler.samples[i];
+            if (!isNeighbour(quantize(rgb), seed)) continue;
+            sumR += (rgb >> 16) & 0xFF;
+            sumG += (rgb >> 8) & 0xFF;
+            sumB += rgb & 0xFF;
+            n++;
+        }
+        int rgb = (int) (sumR / n) << 16 | (int) (sumG / n) << 8 | (int) (sumB / n);
+
+        return BackgroundColor.builder()
+                .rgb(rgb)
+                .hex(String.format("#%06X", rgb))
+                .confidence(clusterCount / (double) total)
+                .sampleCount(all)
+                .transparentRatio(transparentRatio)
+                .build();
+    }
+
+    /* Among the most frequent bins, the one whose 3x3x3 neighbourhood holds the most samples */
+    private static int densestSeed(IntHistogram histogram) {
+        int[] keys = histogram.keys();
+        int[] counts = histogram.counts();
+        long[] order = new long[keys.length];
+        for (int i = 0; i < keys.length; i++) order[i] = (long) counts[i] << 32 | i;
+        Arrays.sort(order);
+
+        int best = keys[(int) order[order.length - 1]];
+        int bestCount = -1;
+        for (int i = order.length - 1; i >= Math.max(0, order.length - SEED_CANDIDATES); i--) {
+            int key = keys[(int) order[i]];
+            int count = neighbourhoodCount(histogram, key);
+            if (count > bestCount) {
+                bestCount = count;
+                best = key;
+            }
+        }
+        return best;
+    }
+
+    private static int neighbourhoodCount(IntHistogram histogram, int key) {
+        int r = key >> 10, g = (key >> 5) & 31, b = key & 31;
+        int count = 0;
+        for (int dr = -1; dr <= 1; dr++) {
+            for (int dg = -1; dg <= 1; dg++) {
+                for (int db = -1; db <= 1; db++) {
+                    int nr = r + dr, ng = g + dg, nb = b + db;
+                    if ((nr | ng | nb) < 0 || nr > 31 || ng > 31 || nb > 31) continue;
+                    count += histogram.get(nr << 10 | ng << 5 | nb);
+                }
+            }
+        }
+        return count;
+    }
+
+    private static boolean isNeighbour(int a, int b) {
+        return Math.abs((a >> 10) - (b >> 10)) <= 1
+                && Math.abs(((a >> 5) & 31) - ((b >> 5) & 31)) <= 1
+                && Math.abs((a & 31) - (b & 31)) <= 1;
+    }
+
+    private static int quantize(int rgb) {
+        return ((rgb >> (16 + QUANT_SHIFT)) & 31) << 10
+                | ((rgb >> (8 + QUANT_SHIFT)) & 31) << 5
+                | ((rgb >> QUANT_SHIFT) & 31);
+    }
+
+    /* Bulk border reader feeding the histogram and the raw sample list */
+    private static class Sampler {
+        private final BufferedImage image;
+        private final int w;
+        private final int h;
+        private final int band;
+        private final int[] row;
+        private final IntHistogram histogram = new IntHistogram(1024);
+        private int[] samples = new int[4096];
+        private int sampleSize;
+        private int opaque;
+        private int transparent;
+
+        Sampler(BufferedImage image, int band) {
+            this.image = image;
+            this.w = image.getWidth();
+            this.h = image.getHeight();
+            this.band = Math.max(1, Math.min(band, Math.min(w, h) / 2));
+            this.row = new int[Math.max(w, h)];
+        }
+
+        /* top and bottom bands in full, left and right bands between them */
+        void sampleBorder() {
+            int stepX = Math.max(1, w / MAX_SAMPLES_PER_EDGE);
+            for (int i = 0; i < band; i++) {
+                sampleRow(i, 0, w, stepX);
+                if (h - 1 - i != i) sampleRow(h - 1 - i, 0, w, stepX);
+            }
+            int stepY = Math.max(1, h / MAX_SAMPLES_PER_EDGE);
+            for (int y = band; y < h - band; y += stepY) {
+                sampleRow(y, 0, band, 1);
+                sampleRow(y, w - band, band, 1);
+            }
+        }
+
+        /* corners are the most reliable background signal, their squares are counted a second time */
+        void sampleCorners() {
+            int size = Math.min(4 * band, Math.min(w, h) / 4);
+            if (size <= 0) return;
+            for (int y = 0; y < size; y++) {
+                sampleRow(y, 0, size, 1);
+                sampleRow(y, w - size, size, 1);
+                sampleRow(h - 1 - y, 0, size, 1);
+                sampleRow(h - 1 - y, w - size, size, 1);
+            }
+        }
+
+        private void sampleRow(int y, int x, int length, int step) {
+            image.getRGB(x, y, length, 1, row, 0, length);
+            for (int i = 0; i < length; i += step) {
+                int argb = row[i];
+                if ((argb >>> 24) < 128) {
+                    transparent++;
+                    continue;
+                }
+                opaque++;
+                histogram.increment(quantize(argb));
+                if (sampleSize == samples.length) samples = Arrays.copyOf(samples, samples.length * 2);
+                samples[sampleSize++] = argb & 0xFFFFFF;
+            }
+        }
+    }
+}
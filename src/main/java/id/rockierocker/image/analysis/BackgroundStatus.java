@@ -0,0 +1,15 @@
+package id.rockierocker.image.analysis;
+
+/**
+ * Background state of an incoming image, as classified by {@link BackgroundStatusClassifier}.
+ */
+public enum BackgroundStatus {
+    /* has transparency and a sharp subject: already cut out */
+    BACKGROUND_REMOVED,
+    /* opaque with a uniform border: a plain color to remove */
+    SOLID_BACKGROUND_NOT_REMOVED,
+    /* almost no edges anywhere */
+    BLUR_BACKGROUND,
+    /* anything else, needs the full pipeline */
+    DIRTY_OR_PARTIAL_BACKGROUND
+}
@@ -0,0 +1,178 @@
+package id.rockierocker.image.analysis;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+
+/**
+ * Classifies the background of an image in one pass over the raster, computing the transparency,
+ * edge sharpness and border variance signals of the former {@code ImageUtil.detectBackgroundStatus}
+ * together with primitive accumulators only.
+ * <p>
+ * With a sample step above 1 only every n-th interior row and column feeds the edge score; the rows it
+ * reads (and their lower neighbours) are still checked for alpha in full, and the border is always exact.
+ */
+public class BackgroundStatusClassifier {
+
+    /* interior pixels to sample with the automatic step, ~1000x1000 */
+    public static final long DEFAULT_MAX_SAMPLES = 1_000_000L;
+
+    private static final int ALPHA_THRESHOLD = 250;
+    private static final double SHARP_EDGE = 10;
+    private static final double BLURRY_EDGE = 5;
+    private static final double UNIFORM_BORDER = 10;
+
+    /**
+     * Exact classification, every pixel is read.
+     */
+    public static BackgroundAnalysis classify(BufferedImage img) {
+        return classify(img, 1);
+    }
+
+    /**
+     * Step that samples about {@code maxSamples} interior pixels of a {@code width x height} image.
+     */
+    public static int autoStep(int width, int height, long maxSamples) {
+        return Math.max(1, (int) Math.sqrt((double) width * height / Math.max(1, maxSamples)));
+    }
+
+    public static BackgroundAnalysis classify(BufferedImage img, int step) {
+        step = Math.max(1, step);
+        int w = img.getWidth();
+        int h = img.getHeight();
+        boolean hasAlpha = img.getColorModel().hasAlpha();
+
+        int[] prev = new int[w];
+        int[] cur = new int[w];
+        boolean prevLoaded = false;
+        long edgeTotal = 0, edgeCount = 0;
+        long borderSum = 0, borderSumSq = 0, borderCount = 0;
+        long transparent = 0, checked = 0;
+
+        for (int y = 0; y < h; y++) {
+            boolean belowSample = isSampleRow(y - 1, h, step);
+            if (y == 0 || y == h - 1 || belowSample || isSampleRow(y, h, step)) {
+                readRow(img, y, cur);
+                if (hasAlpha) {
+                    for (int x = 0; x < w; x++) {
+                        if ((cur[x] >>> 24) < ALPHA_THRESHOLD) transparent++;
+                    }
+                    checked += w;
+                }
+                if (y == 0 || y == h - 1) {
+                    for (int x = 0; x < w; x++) {
+                        int b = cur[x] & 0xFF;
+                        borderSum += b;
+                        borderSumSq += b * b;
+                    }
+                    borderCount += w;
+                }
+                // this row is the lower neighbour of the previous sample row
+                if (belowSample && prevLoaded) {
+                    for (int x = 1; x < w - 1; x += step) {
+                        int c = prev[x] & 0xFF;
+                        edgeTotal += Math.abs(c - (prev[x + 1] & 0xFF)) + Math.abs(c - (cur[x] & 0xFF));
+                        edgeCount++;
+                    }
+                }
+                int left = cur[0];
+                int right = cur[w - 1];
+                borderSum += (left & 0xFF) + (right & 0xFF);
+                borderSumSq += (left & 0xFF) * (left & 0xFF) + (right & 0xFF) * (right & 0xFF);
+                borderCount += 2;
+
+                int[] swap = prev;
+                prev = cur;
+                cur = swap;
+                prevLoaded = true;
+            } else {
+                int left = pixel(img, 0, y);
+                int right = pixel(img, w - 1, y);
+                borderSum += (left & 0xFF) + (right & 0xFF);
+                borderSumSq += (left & 0xFF) * (left & 0xFF) + (right & 0xFF) * (right & 0xFF);
+                borderCount += 2;
+                if (hasAlpha) {
+                    if ((left >>> 24) < ALPHA_THRESHOLD) transparent++;
+                    if ((right >>> 24) < ALPHA_THRESHOLD) transparent++;
+                    checked += 2;
+                }
+                prevLoaded = false;
+            }
+        }
+
+        double edge = edgeCount == 0 ? 0 : edgeTotal / (double) edgeCount;
+        double borderMean = borderSum / (double) borderCount;
+        double borderVariance = Math.max(0, borderSumSq / (double) borderCount - borderMean * borderMean);
+        boolean isTransparent = transparent > 0;
+
+        return BackgroundAnalysis.builder()
+                .status(status(isTransparent, edge, borderVariance))
+                .width(w)
+                .height(h)
+                .sampleStep(step)
+                .transparent(isTransparent)
+                .transparentRatio(checked == 0 ? 0 : transparent / (double) checked)
+                .edgeSharpness(edge)
+                .borderColorVariance(borderVariance)
+                .build();
+    }
+
+    static BackgroundStatus status(boolean transparent, double edge, double borderVariance) {
+        if (transparent && edge > SHARP_EDGE) return BackgroundStatus.BACKGROUND_REMOVED;
+        if (!transparent && borderVariance < UNIFORM_BORDER && edge > SHARP_EDGE)
+            return BackgroundStatus.SOLID_BACKGROUND_NOT_REMOVED;
+        if (edge < BLURRY_EDGE) return BackgroundStatus.BLUR_BACKGROUND;
+        return BackgroundStatus.DIRTY_OR_PARTIAL_BACKGROUND;
+    }
+
+    /* interior rows 1, 1 + step, ... feed the edge score */
+    private static boolean isSampleRow(int y, int h, int step) {
+        return y >= 1 && y <= h - 2 && (y - 1) % step == 0;
+    }
+
+    /* ARGB row straight from the data buffer for the common layouts, getRGB otherwise */
+    private static void readRow(BufferedImage img, int y, int[] row) {
+        int w = img.getWidth();
+        boolean direct = img.getRaster().getParent() == null;
+        switch (direct ? img.getType() : BufferedImage.TYPE_CUSTOM) {
+            case BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_INT_RGB ->
+                    System.arraycopy(((DataBufferInt) img.getRaster().getDataBuffer()).getData(), y * w, row, 0, w);
+            case BufferedImage.TYPE_4BYTE_ABGR -> {
+                byte[] data = ((DataBufferByte) img.getRaster().getDataBuffer()).getData();
+                for (int x = 0, i = y * w * 4; x < w; x++, i += 4) {
+                    row[x] = (data[i] & 0xFF) << 24 | (data[i + 3] & 0xFF) << 16 | (data[i + 2] & 0xFF) << 8 | (data[i + 1] & 0xFF);
+                }
+            }
+            case BufferedImage.TYPE_3BYTE_BGR -> {
+                byte[] data = ((DataBufferByte) img.getRaster().getDataBuffer()).getData();
+                for (int x = 0, i = y * w * 3; x < w; x++, i += 3) {
+                    row[x] = 0xFF000000 | (data[i + 2] & 0xFF) << 16 | (data[i + 1] & 0xFF) << 8 | (data[i] & 0xFF);
+                }
+            }
+            default -> img.getRGB(0, y, w, 1, row, 0, w);
+        }
+    }
+
+    private static int pixel(BufferedImage img, int x, int y) {
+        int w = img.getWidth();
+        boolean direct = img.getRaster().getParent() == null;
+        switch (direct ? img.getType() : BufferedImage.TYPE_CUSTOM) {
+            case BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_INT_RGB -> {
+                return ((DataBufferInt) img.getRaster().getDataBuffer()).getData()[y * w + x];
+            }
+            case BufferedImage.TYPE_4BYTE_ABGR -> {
+                byte[] data = ((DataBufferByte) img.getRaster().getDataBuffer()).getData();
+                int i = (y * w + x) * 4;
+                return (data[i] & 0xFF) << 24 | (data[i + 3] & 0xFF) << 16 | (data[i + 2] & 0xFF) << 8 | (data[i + 1] & 0xFF);
+            }
+            case BufferedImage.TYPE_3BYTE_BGR -> {
+                byte[] data = ((DataBufferByte) img.getRaster().getDataBuffer()).getData();
+                int i = (y * w + x) * 3;
+                return 0xFF000000 | (data[i + 2] & 0xFF) << 16 | (data[i + 1] & 0xFF) << 8 | (data[i] & 0xFF);
+            }
+            default -> {
+                return img.getRGB(x, y);
+            }
+        }
+    }
+}
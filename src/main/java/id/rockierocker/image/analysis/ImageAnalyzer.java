@@ -0,0 +1,109 @@
+package id.rockierocker.image.analysis;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Computes {@link ImageStats} in a single pass over a downscaled copy of the image using
+ * primitive accumulators only.
+ */
+public class ImageAnalyzer {
+
+    public static final int DEFAULT_MAX_DIMENSION = 256;
+
+    /* Sobel L1 magnitude counted as an edge, roughly Canny's high threshold of 150 */
+    private static final int EDGE_THRESHOLD = 150;
+
+    public static ImageStats analyze(BufferedImage image) {
+        return analyze(image, DEFAULT_MAX_DIMENSION);
+    }
+
+    public static ImageStats analyze(BufferedImage image, int maxDimension) {
+        int sw = image.getWidth();
+        int sh = image.getHeight();
+        double scale = Math.min(1.0, maxDimension / (double) Math.max(sw, sh));
+        int w = Math.max(1, (int) Math.round(sw * scale));
+        int h = Math.max(1, (int) Math.round(sh * scale));
+
+        // downscaled copy (nearest sample) and its luma
+        int[] argb = new int[w * h];
+        int[] luma = new int[w * h];
+        int[] row = new int[sw];
+        for (int y = 0; y < h; y++) {
+            int sy = h == 1 ? 0 : (int) ((long) y * (sh - 1) / (h - 1));
+            image.getRGB(0, sy, sw, 1, row, 0, sw);
+            for (int x = 0; x < w; x++) {
+                int sx = w == 1 ? 0 : (int) ((long) x * (sw - 1) / (w - 1));
+                int p = row[sx];
+                argb[y * w + x] = p;
+                luma[y * w + x] = (((p >> 16) & 0xFF) * 77 + ((p >> 8) & 0xFF) * 150 + (p & 0xFF) * 29) >> 8;
+            }
+        }
+
+        boolean hasAlpha = image.getColorModel().hasAlpha();
+        long count = (long) w * h;
+        double sumS = 0, sumV = 0;
+        double borderSumS = 0, borderSumV = 0, borderSumSqS = 0, borderSumSqV = 0;
+        double borderSumB = 0, borderSumSqB = 0;
+        long borderCount = 0, edges = 0, transparent = 0;
+
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                int i = y * w + x;
+                int p = argb[i];
+                int r = (p >> 16) & 0xFF;
+                int g = (p >> 8) & 0xFF;
+                int b = p & 0xFF;
+                int max = Math.max(r, Math.max(g, b));
+                int min = Math.min(r, Math.min(g, b));
+                double s = max == 0 ? 0 : (max - min) * 255.0 / max;
+                sumS += s;
+                sumV += max;
+
+                if (hasAlpha && (p >>> 24) < 250) transparent++;
+
+                if (x == 0 || y == 0 || x == w - 1 || y == h - 1) {
+                    borderCount++;
+                    borderSumS += s;
+                    borderSumSqS += s * s;
+                    borderSumV += max;
+                    borderSumSqV += (double) max * max;
+                    borderSumB += b;
+                    borderSumSqB += (double) b * b;
+                } else {
+                    int gx = (luma[i - w + 1] + 2 * luma[i + 1] + luma[i + w + 1])
+                            - (luma[i - w - 1] + 2 * luma[i - 1] + luma[i + w - 1]);
+                    int gy = (luma[i + w - 1] + 2 * luma[i + w] + luma[i + w + 1])
+                            - (luma[i - w - 1] + 2 * luma[i - w] + luma[i - w + 1]);
+                    if (Math.abs(gx) + Math.abs(gy) >= EDGE_THRESHOLD) edges++;
+                }
+            }
+        }
+
+        double borderMeanS = borderSumS / borderCount;
+        double borderMeanV = borderSumV / borderCount;
+        double stdS = Math.sqrt(Math.max(0, borderSumSqS / borderCount - borderMeanS * borderMeanS));
+        double stdV = Math.sqrt(Math.max(0, borderSumSqV / borderCount - borderMeanV * borderMeanV));
+        double meanB = borderSumB / borderCount;
+
+        // same scoring as the previous per-pixel OpenCV implementation
+        double uniformity = ((1.0 - Math.min(stdV / 128.0, 1.0)) + (1.0 - Math.min(stdS / 128.0, 1.0))) / 2.0;
+        if (borderMeanV > 200 && borderMeanS < 30) uniformity *= 1.2;
+
+        long interior = Math.max(1, (long) Math.max(0, w - 2) * Math.max(0, h - 2));
+        return ImageStats.builder()
+                .width(w)
+                .height(h)
+                .sourceWidth(sw)
+                .sourceHeight(sh)
+                .borderUniformity(Math.min(uniformity, 1.0))
+                .borderBrightnessMean(borderMeanV)
+                .borderSaturationMean(borderMeanS)
+                .borderColorVariance(Math.max(0, borderSumSqB / borderCount - meanB * meanB))
+                .brightnessMean(sumV / count)
+                .saturationMean(sumS / count)
+                .edgeRatio(edges / (double) interior)
+                .hasAlphaChannel(hasAlpha)
+                .transparentRatio(transparent / (double) count)
+                .build();
+    }
+}
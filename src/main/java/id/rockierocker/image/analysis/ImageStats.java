@@ -0,0 +1,46 @@
+package id.rockierocker.image.analysis;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Image statistics computed once by {@link ImageAnalyzer} and shared by the stages that need them.
+ * HSV values use OpenCV's 8-bit scale (S and V in 0..255).
+ */
+@Getter
+@Builder
+@ToString
+public class ImageStats {
+
+    /* size of the analysed (downscaled) copy and of the source */
+    private final int width;
+    private final int height;
+    private final int sourceWidth;
+    private final int sourceHeight;
+
+    /* 0..1, high when the border has uniform brightness and saturation */
+    private final double borderUniformity;
+    private final double borderBrightnessMean;
+    private final double borderSaturationMean;
+    /* variance of the border blue channel, same signal as ImageUtil.borderColorVariance */
+    private final double borderColorVariance;
+
+    private final double brightnessMean;
+    private final double saturationMean;
+
+    /* share of pixels with a strong Sobel gradient */
+    private final double edgeRatio;
+
+    private final boolean hasAlphaChannel;
+    /* share of pixels with alpha < 250 */
+    private final double transparentRatio;
+
+    public boolean isTransparent() {
+        return transparentRatio > 0;
+    }
+
+    public boolean isLightBackground() {
+        return borderBrightnessMean > 200 && borderSaturationMean < 30;
+    }
+}
@@ -0,0 +1,109 @@
+package id.rockierocker.image.analysis;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing int to int counter for non-negative keys (packed or quantized colors).
+ * Linear probing over a power-of-two table, no boxing and no per-entry objects.
+ */
+public class IntHistogram {
+
+    private static final int EMPTY = -1;
+
+    private int[] keys;
+    private int[] counts;
+    private int size;
+    private int mask;
+
+    public IntHistogram() {
+        this(256);
+    }
+
+    public IntHistogram(int expectedKeys) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedKeys * 2 - 1)) << 1;
+        allocate(capacity);
+    }
+
+    public void increment(int key) {
+        add(key, 1);
+    }
+
+    public void add(int key, int amount) {
+        int slot = slot(key);
+        if (keys[slot] == EMPTY) {
+            keys[slot] = key;
+            counts[slot] = amount;
+            if (++size * 2 > keys.length) grow();
+            return;
+        }
+        counts[slot] += amount;
+    }
+
+    /** Set the value of a key, replacing any previous count; lets the table serve as a plain int map */
+    public void put(int key, int value) {
+        int slot = slot(key);
+        if (keys[slot] == EMPTY) {
+            keys[slot] = key;
+            counts[slot] = value;
+            if (++size * 2 > keys.length) grow();
+            return;
+        }
+        counts[slot] = value;
+    }
+
+    public int get(int key) {
+        int slot = slot(key);
+        return keys[slot] == EMPTY ? 0 : counts[slot];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** Keys currently present, in table order */
+    public int[] keys() {
+        int[] out = new int[size];
+        for (int i = 0, n = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) out[n++] = keys[i];
+        }
+        return out;
+    }
+
+    /** Counts matching {@link #keys()} index for index */
+    public int[] counts() {
+        int[] out = new int[size];
+        for (int i = 0, n = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) out[n++] = counts[i];
+        }
+        return out;
+    }
+
+    private int slot(int key) {
+        // fibonacci hashing spreads the low-entropy bits of packed colors
+        int hash = key * 0x9E3779B9;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (keys[slot] != EMPTY && keys[slot] != key) slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        int[] oldCounts = counts;
+        allocate(oldKeys.length << 1);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == EMPTY) continue;
+            int slot = slot(oldKeys[i]);
+            keys[slot] = oldKeys[i];
+            counts[slot] = oldCounts[i];
+            size++;
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        counts = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        mask = capacity - 1;
+        size = 0;
+    }
+}
@@ -1,22 +1,77 @@
 package id.rockierocker.image.config;
 
+import id.rockierocker.image.constant.RembgEnum;
+import id.rockierocker.image.rembg.OnnxModelVariants;
 import id.rockierocker.image.rembg.OnnxRembg;
+import id.rockierocker.image.rembg.OnnxSession;
+import id.rockierocker.image.rembg.OnnxSessionOptions;
 import id.rockierocker.image.rembg.Rembg;
 import id.rockierocker.image.rembg.constant.OnnxInputSize;
+import id.rockierocker.image.repository.RembgConfigRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationRunner;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
+@Slf4j
 @Configuration
 public class RembgConfig {
+
+    private static final Map<String, Object> DEFAULT_ONNX_CONFIG = Map.of(
+            "onnxModelPath", "./data/onnx-model/isnet-anime.onnx",
+            "onnxInputSize", OnnxInputSize.INPUT_SIZE_320
+    );
+
     @Bean
     public Rembg rembg() {
         OnnxRembg onnxRembg = new OnnxRembg();
-        onnxRembg.configMap(Map.of(
-                "onnxModelPath", "./data/onnx-model/isnet-anime.onnx",
-                "onnxInputSize", OnnxInputSize.INPUT_SIZE_320
-        ));
+        onnxRembg.configMap(DEFAULT_ONNX_CONFIG);
         return onnxRembg;
     }
+
+    /* Load and warm up every ONNX model referenced by the default config and the rembg_config table */
+    @Bean
+    public ApplicationRunner onnxSessionWarmup(
+            RembgConfigRepository rembgConfigRepository,
+            @Value("${onnx.session.memory-budget-mb:0}") long memoryBudgetMb,
+            @Value("${onnx.session.warmup.enabled:true}") boolean warmupEnabled
+    ) {
+        return args -> {
+            OnnxSession.setMemoryBudgetBytes(memoryBudgetMb * 1024 * 1024);
+            if (!warmupEnabled) return;
+
+            List<Map<String, Object>> configs = new ArrayList<>();
+            configs.add(DEFAULT_ONNX_CONFIG);
+            try {
+                rembgConfigRepository.findAll().stream()
+                        .filter(c -> Objects.nonNull(c.getConfig()))
+                        .filter(c -> RembgEnum.ONNX_REMBG.name().equalsIgnoreCase(c.getProcess())
+                                || RembgEnum.CASCADE_REMBG.name().equalsIgnoreCase(c.getProcess()))
+                        .forEach(c -> configs.add(c.getConfig()));
+            } catch (Exception e) {
+                log.warn("Could not read rembg_config for ONNX warmup: {}", e.getMessage());
+            }
+
+            for (Map<String, Object> config : configs) {
+                if (config.get("onnxModelPath") == null) continue;
+                String modelPath = OnnxModelVariants.resolveModelPath(config);
+                OnnxInputSize inputSize = OnnxInputSize.fromString(config.getOrDefault("onnxInputSize", "INPUT_SIZE_320").toString());
+                /* AUTO may pick any size, warm them all so each has a latency estimate for the budget */
+                OnnxInputSize[] sizes = inputSize == OnnxInputSize.AUTO ? OnnxInputSize.fixedSizes() : new OnnxInputSize[]{inputSize};
+                for (OnnxInputSize size : sizes) {
+                    try {
+                        OnnxSession.warmup(modelPath, OnnxSessionOptions.fromConfig(config), size.inputSize);
+                    } catch (Exception e) {
+                        log.warn("ONNX warmup failed for {} at {}: {}", modelPath, size.inputSize, e.getMessage());
+                    }
+                }
+            }
+        };
+    }
 }
@@ -1,14 +1,22 @@
 package id.rockierocker.image.constant;
 
 import id.rockierocker.image.preprocess.AdjustContrast;
+import id.rockierocker.image.preprocess.GaussianBlur;
 import id.rockierocker.image.preprocess.KMeansQuantization;
+import id.rockierocker.image.preprocess.MedianCutQuantization;
+import id.rockierocker.image.preprocess.OctreeQuantization;
 import id.rockierocker.image.preprocess.RemoveOutline;
 import id.rockierocker.image.preprocess.Sharpen;
+import id.rockierocker.image.preprocess.UnsharpMask;
 
 public enum PreprocessEnum {
     K_MEANS_QUANTIZATION(KMeansQuantization.class),
+    MEDIAN_CUT_QUANTIZATION(MedianCutQuantization.class),
+    OCTREE_QUANTIZATION(OctreeQuantization.class),
     ADJUST_CONTRAST(AdjustContrast.class),
     SHARPEN(Sharpen.class),
+    GAUSSIAN_BLUR(GaussianBlur.class),
+    UNSHARP_MASK(UnsharpMask.class),
     REMOVE_OUTLINE(RemoveOutline.class);
 
     PreprocessEnum(Class<?> PreprocessClass) {
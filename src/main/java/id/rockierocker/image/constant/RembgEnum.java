@@ -2,6 +2,7 @@ package id.rockierocker.image.constant;
 
 import id.rockierocker.image.crop.OpenCVContourCrop;
 import id.rockierocker.image.rembg.ByHexCodeRembg;
+import id.rockierocker.image.rembg.CascadeRembg;
 import id.rockierocker.image.rembg.OnnxRembg;
 import id.rockierocker.image.rembg.OnnxRembgRestApi;
 import id.rockierocker.image.rembg.OpenCVRembg;
@@ -10,7 +11,8 @@ public enum RembgEnum {
     BY_HEX_CODE_REMBG(ByHexCodeRembg.class),
     ONNX_REMBG(OnnxRembg.class),
     ONNX_REMBG_REST_API(OnnxRembgRestApi.class),
-    OPEN_CV(OpenCVRembg .class);
+    OPEN_CV(OpenCVRembg .class),
+    CASCADE_REMBG(CascadeRembg.class);
     RembgEnum(Class<?> rembgClass) {
         this.rembgClass = rembgClass;
     }
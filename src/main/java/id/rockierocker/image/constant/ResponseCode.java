@@ -120,6 +120,20 @@ public enum ResponseCode {
             "Error",
             "Error"
     ),
+    IMAGE_TOO_LARGE(
+            "RC017",
+            "Dimensi gambar terlalu besar.",
+            "Image dimensions are too large.",
+            "Error",
+            "Dimensi gambar terlalu besar."
+    ),
+    INVALID_IMAGE_DIMENSIONS(
+            "RC018",
+            "Dimensi gambar tidak valid.",
+            "Image dimensions are invalid.",
+            "Error",
+            "Error"
+    ),
     ;
 
     private ResponseCode(String code, String defaultMessageId, String defaultMessageEn, String defaultTitleId, String defaultTitleEn) {
@@ -0,0 +1,25 @@
+package id.rockierocker.image.controller;
+
+import id.rockierocker.image.analysis.BackgroundAnalysis;
+import id.rockierocker.image.service.ImageAnalysisService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+
+
+@RequiredArgsConstructor
+@RestController
+@RequestMapping("/analyze")
+public class ImageAnalysisController {
+
+    private final ImageAnalysisService imageAnalysisService;
+
+    @PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<BackgroundAnalysis> analyze(@RequestParam("file") MultipartFile file,
+                                                      @RequestParam(value = "step", required = false) Integer step) {
+        return ResponseEntity.ok(imageAnalysisService.analyze(file, step));
+    }
+
+}
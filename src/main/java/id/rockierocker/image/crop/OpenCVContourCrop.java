@@ -1,11 +1,11 @@
 package id.rockierocker.image.crop;
 
+import id.rockierocker.image.util.NativeImageBuffer;
 import lombok.extern.slf4j.Slf4j;
 import org.opencv.core.*;
 import org.opencv.imgproc.Imgproc;
 
 import java.awt.image.BufferedImage;
-import java.awt.image.DataBufferByte;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
@@ -48,34 +48,26 @@ public class OpenCVContourCrop implements Crop {
         boolean hasAlpha = inputImage.getColorModel().hasAlpha();
         log.info("Image has alpha channel: {}", hasAlpha);
 
-        // 1️⃣ Convert BufferedImage → Mat (preserving alpha if present)
-        Mat src = bufferedImageToMat(inputImage);
+        // 1️⃣ Convert BufferedImage → BGRA Mat, one bulk copy shared by mask detection and every crop
+        NativeImageBuffer buffer = NativeImageBuffer.fromBufferedImage(inputImage);
+        Mat src = buffer.mat();
 
         // 2️⃣ Create mask based on alpha channel or brightness
         Mat mask = new Mat();
 
-        if (src.channels() == 4 && hasAlpha) {
+        if (hasAlpha) {
             // For transparent images: use alpha channel directly
             log.info("Using alpha channel for mask detection");
-            List<Mat> channels = new ArrayList<>();
-            Core.split(src, channels);
-            Mat alphaChannel = channels.get(3); // BGRA format, alpha is channel 3
+            Mat alphaChannel = new Mat();
+            Core.extractChannel(src, alphaChannel, 3); // BGRA format, alpha is channel 3
 
             // Threshold alpha: any pixel with alpha > 10 is considered visible
             Imgproc.threshold(alphaChannel, mask, 10, 255, Imgproc.THRESH_BINARY);
-
-            // Clean up channels
-            for (Mat channel : channels) {
-                if (channel != alphaChannel) {
-                    channel.release();
-                }
-            }
             alphaChannel.release();
         } else {
             // For opaque images: use brightness/grayscale
             log.info("Using grayscale for mask detection");
-            Mat gray = new Mat();
-            Imgproc.cvtColor(src, gray, Imgproc.COLOR_BGR2GRAY);
+            Mat gray = buffer.gray();
 
             // Use adaptive threshold or Otsu for better edge detection
             Imgproc.threshold(gray, mask, 0, 255, Imgproc.THRESH_BINARY_INV + Imgproc.THRESH_OTSU);
@@ -128,16 +120,17 @@ public class OpenCVContourCrop implements Crop {
                     validContours + 1, rect.area(), rect.width, rect.height, rect.x, rect.y,
                     paddedRect.width, paddedRect.height, paddedRect.x, paddedRect.y, croppingPadding);
 
-            Mat cropped = new Mat(src, paddedRect);
-            BufferedImage croppedImage = matToBufferedImage(cropped);
-            results.add(croppedImage);
+            // the region is a view of the shared buffer, only copied once into the output image
+            try (NativeImageBuffer cropped = buffer.region(paddedRect)) {
+                results.add(cropped.toBufferedImage());
+            }
             validContours++;
         }
 
         log.info("Successfully cropped {} valid regions", validContours);
 
         // Clean up
-        src.release();
+        buffer.close();
         mask.release();
         kernel.release();
         hierarchy.release();
@@ -145,94 +138,4 @@ public class OpenCVContourCrop implements Crop {
         return results;
     }
 
-    private Mat bufferedImageToMat(BufferedImage bi) {
-        // Determine if we need to preserve alpha channel
-        boolean hasAlpha = bi.getColorModel().hasAlpha();
-        BufferedImage convertedImage;
-        Mat mat;
-
-        if (hasAlpha) {
-            // Convert to 4BYTE_ABGR for OpenCV BGRA format
-            log.debug("Converting BufferedImage with alpha (type: {}) to 4BYTE_ABGR", bi.getType());
-            convertedImage = new BufferedImage(bi.getWidth(), bi.getHeight(), BufferedImage.TYPE_4BYTE_ABGR);
-            convertedImage.getGraphics().drawImage(bi, 0, 0, null);
-
-            mat = new Mat(convertedImage.getHeight(), convertedImage.getWidth(), CvType.CV_8UC4);
-            byte[] data = ((DataBufferByte) convertedImage.getRaster().getDataBuffer()).getData();
-            mat.put(0, 0, data);
-        } else {
-            // Convert to BGR format for OpenCV
-            if (bi.getType() != BufferedImage.TYPE_3BYTE_BGR) {
-                log.debug("Converting BufferedImage from type {} to TYPE_3BYTE_BGR", bi.getType());
-                convertedImage = new BufferedImage(bi.getWidth(), bi.getHeight(), BufferedImage.TYPE_3BYTE_BGR);
-                convertedImage.getGraphics().drawImage(bi, 0, 0, null);
-            } else {
-                convertedImage = bi;
-            }
-
-            mat = new Mat(convertedImage.getHeight(), convertedImage.getWidth(), CvType.CV_8UC3);
-            byte[] data = ((DataBufferByte) convertedImage.getRaster().getDataBuffer()).getData();
-            mat.put(0, 0, data);
-        }
-
-        return mat;
-    }
-
-    private BufferedImage matToBufferedImage(Mat mat) {
-        int type;
-
-        // Determine output type based on channels
-        if (mat.channels() == 4) {
-            // BGRA -> convert to INT_ARGB for high quality
-            type = BufferedImage.TYPE_INT_ARGB;
-            byte[] data = new byte[mat.rows() * mat.cols() * 4];
-            mat.get(0, 0, data);
-
-            BufferedImage image = new BufferedImage(mat.cols(), mat.rows(), type);
-            int[] pixels = new int[mat.cols() * mat.rows()];
-
-            // Convert BGRA to ARGB
-            for (int i = 0; i < pixels.length; i++) {
-                int idx = i * 4;
-                int b = data[idx] & 0xFF;
-                int g = data[idx + 1] & 0xFF;
-                int r = data[idx + 2] & 0xFF;
-                int a = data[idx + 3] & 0xFF;
-                pixels[i] = (a << 24) | (r << 16) | (g << 8) | b;
-            }
-
-            image.setRGB(0, 0, mat.cols(), mat.rows(), pixels, 0, mat.cols());
-            return image;
-        } else if (mat.channels() == 3) {
-            // BGR -> convert to INT_RGB for high quality
-            type = BufferedImage.TYPE_INT_RGB;
-            byte[] data = new byte[mat.rows() * mat.cols() * 3];
-            mat.get(0, 0, data);
-
-            BufferedImage image = new BufferedImage(mat.cols(), mat.rows(), type);
-            int[] pixels = new int[mat.cols() * mat.rows()];
-
-            // Convert BGR to RGB
-            for (int i = 0; i < pixels.length; i++) {
-                int idx = i * 3;
-                int b = data[idx] & 0xFF;
-                int g = data[idx + 1] & 0xFF;
-                int r = data[idx + 2] & 0xFF;
-                pixels[i] = 0xFF000000 | (r << 16) | (g << 8) | b;
-            }
-
-            image.setRGB(0, 0, mat.cols(), mat.rows(), pixels, 0, mat.cols());
-            return image;
-        } else {
-            // Grayscale
-            type = BufferedImage.TYPE_BYTE_GRAY;
-            byte[] data = new byte[mat.rows() * mat.cols()];
-            mat.get(0, 0, data);
-
-            BufferedImage image = new BufferedImage(mat.cols(), mat.rows(), type);
-            image.getRaster().setDataElements(0, 0, mat.cols(), mat.rows(), data);
-            return image;
-        }
-    }
-
 }
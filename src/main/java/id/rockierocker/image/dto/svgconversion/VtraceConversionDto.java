@@ -1,6 +1,7 @@
 package id.rockierocker.image.dto.svgconversion;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import id.rockierocker.image.util.ImageHeader;
 import lombok.*;
 
 import java.awt.image.BufferedImage;
@@ -25,5 +26,7 @@ public class VtraceConversionDto {
     @JsonIgnore
     private byte[] inputBytes;
     @JsonIgnore
+    private ImageHeader inputHeader;
+    @JsonIgnore
     private BufferedImage inputBufferedImage;
 }
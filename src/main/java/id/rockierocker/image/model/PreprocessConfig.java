@@ -45,4 +45,16 @@ public class PreprocessConfig extends BaseEntity{
     @Column(name = "sharpen_kernel", columnDefinition = "jsonb")
     private List<List<Float>> sharpenKernel;
 
+    @Column(name = "blur_sigma")
+    private Float blurSigma;
+
+    @Column(name = "unsharp_amount")
+    private Float unsharpAmount;
+
+    @Column(name = "outline_radius")
+    private Integer outlineRadius;
+
+    @Column(name = "outline_mode", length = 10)
+    private String outlineMode;
+
 }
@@ -0,0 +1,32 @@
+package id.rockierocker.image.preprocess;
+
+
+import id.rockierocker.image.preprocess.model.PreprocessConfig;
+import id.rockierocker.image.preprocess.util.Convolution;
+import lombok.extern.slf4j.Slf4j;
+
+import java.awt.image.BufferedImage;
+import java.util.Objects;
+
+@Slf4j
+public class GaussianBlur implements ImagePreprocess {
+
+    static final float DEFAULT_SIGMA = 1.0f;
+
+    @Override
+    public BufferedImage process(BufferedImage inputImage, PreprocessConfig preprocessConfig) {
+        float sigma = Objects.requireNonNullElse(preprocessConfig.getBlurSigma(), DEFAULT_SIGMA);
+        log.info("Applying gaussian blur with sigma: {}", sigma);
+        return gaussianBlur(inputImage, sigma);
+    }
+
+    // =========================
+    // GAUSSIAN BLUR
+    // =========================
+    static BufferedImage gaussianBlur(BufferedImage img, float sigma) {
+        // Fast path: no blur requested
+        if (sigma <= 0) return img;
+        float[] kernel = Convolution.gaussian(sigma);
+        return Convolution.convolveSeparable(img, kernel, kernel, Convolution.Border.REFLECT);
+    }
+}
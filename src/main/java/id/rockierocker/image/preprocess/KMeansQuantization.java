@@ -1,20 +1,51 @@
 package id.rockierocker.image.preprocess;
 
 
-import id.rockierocker.image.preprocess.model.Color;
+import id.rockierocker.image.analysis.IntHistogram;
 import id.rockierocker.image.preprocess.model.PreprocessConfig;
+import id.rockierocker.image.preprocess.util.IndexedPalette;
 import id.rockierocker.image.preprocess.util.PreprocessUtil;
 import lombok.extern.slf4j.Slf4j;
 
 import java.awt.image.BufferedImage;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Random;
+import java.awt.image.DataBufferInt;
 import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.IntStream;
 
+/**
+ * K-Means color quantization over weighted points.
+ * <p>
+ * The opaque pixels are first counted into a histogram of unique colors. Images with at most
+ * {@code k} colors are returned unchanged, images with up to {@link #MAX_UNIQUE_COLORS} colors are
+ * clustered on those colors weighted by their pixel count, and anything busier falls back to a
+ * sample of the pixels. Points are kept as struct-of-arrays floats, seeding is k-means++ from a
+ * fixed seed so the same image always gives the same palette, and assignment is split over the
+ * fork-join pool with per-task partial sums. Sampled pixels are mapped through the 15-bit
+ * {@link IndexedPalette} lookup table shared with the other quantizers, unique colors exactly.
+ */
 @Slf4j
 public class KMeansQuantization implements ImagePreprocess{
 
+    public static final long DEFAULT_SEED = 0x5EEDL;
+    /* above this many distinct colors the histogram is dropped in favour of a pixel sample */
+    public static final int MAX_UNIQUE_COLORS = 1 << 13;
+
+    /* alpha <= threshold is considered transparent and skipped */
+    private static final int TRANSPARENT_THRESHOLD = PreprocessUtil.TRANSPARENT_ALPHA;
+    /* opaque pixels drawn for training when the image has too many colors */
+    private static final int MAX_SAMPLE = 65536;
+    /* points assigned per iteration, smaller point sets run plain Lloyd iterations */
+    private static final int BATCH_SIZE = 16384;
+    /* batch slice per fork-join task */
+    private static final int TASK_SIZE = 4096;
+    private static final int BAND_ROWS = 64;
+    /* squared centroid shift below which training stops */
+    private static final float CONVERGED = 0.01f;
+
     @Override
     public BufferedImage process(BufferedImage inputImage, PreprocessConfig preprocessConfig) {
         log.info("Applying K-Means Quantization with k={} and iterations={}",
@@ -25,121 +56,350 @@ public class KMeansQuantization implements ImagePreprocess{
     }
 
     public static BufferedImage kMeansQuantization(BufferedImage img, int k, int iterations) {
+        return kMeansQuantization(img, k, iterations, DEFAULT_SEED);
+    }
+
+    public static BufferedImage kMeansQuantization(BufferedImage img, int k, int iterations, long seed) {
         int w = img.getWidth();
         int h = img.getHeight();
-        int total = w * h;
-
-        // Read pixels in bulk
-        int[] src = img.getRGB(0, 0, w, h, null, 0, w);
+        int[] src = PreprocessUtil.readPixels(img);
         boolean hasAlpha = img.getColorModel().hasAlpha();
+        if (k <= 0) k = 1;
+
+        IntHistogram colors = uniqueColors(src, hasAlpha, MAX_UNIQUE_COLORS);
+        // If no non-transparent pixels, return a copy preserving alpha
+        if (colors != null && colors.size() == 0) {
+            BufferedImage out = newImage(w, h, hasAlpha);
+            System.arraycopy(src, 0, pixels(out), 0, src.length);
+            return out;
+        }
+        // already within the palette size: nothing to cluster
+        if (colors != null && colors.size() <= k) {
+            log.info("Image has {} colors, k={}, keeping the exact palette", colors.size(), k);
+            BufferedImage out = newImage(w, h, hasAlpha);
+            mapPixels(src, pixels(out), w, h, hasAlpha, argb -> argb & 0xFFFFFF);
+            return out;
+        }
+
+        Random random = new Random(seed);
+        Points points = colors != null ? Points.weighted(colors, random) : Points.sample(src, hasAlpha, random);
+        log.info("Clustering {} {}", points.size, colors != null ? "unique colors" : "sampled pixels");
+
+        // Adjust k if there are fewer points than k
+        if (k > points.size) k = points.size;
+        float[][] centroids = seedCentroids(points, k, random);
+        train(points, centroids, iterations);
+        int[] palette = palette(centroids);
+
+        // Build output image preserving alpha/transparency: transparent pixels remain transparent
+        if (colors != null) {
+            IntHistogram mapped = exactMapping(points, centroids, palette);
+            BufferedImage out = newImage(w, h, hasAlpha);
+            mapPixels(src, pixels(out), w, h, hasAlpha, argb -> mapped.get(argb & 0xFFFFFF));
+            return out;
+        }
+        return IndexedPalette.of(palette).apply(src, w, h, hasAlpha);
+    }
 
-        // Build list of pixels to cluster: skip fully transparent pixels so we don't "fill" holes
-        List<Color> pixels = new ArrayList<>(total);
-        int[] mapping = new int[total]; // maps position -> index in pixels list, -1 if skipped
-        Arrays.fill(mapping, -1);
-
-        final int TRANSPARENT_THRESHOLD = 8; // alpha <= threshold will be considered transparent and skipped
-        int idxMap = 0;
-        for (int i = 0; i < total; i++) {
-            int rgb = src[i];
-            int a = (rgb >> 24) & 0xff;
-            if (hasAlpha && a <= TRANSPARENT_THRESHOLD) {
-                // skip transparent pixel
+    /*
+     * Opaque colors (0x00RRGGBB) and their pixel counts, or null once more than maxColors are seen.
+     * Runs of one color are counted before touching the table, flat artwork is mostly runs.
+     */
+    static IntHistogram uniqueColors(int[] pixels, boolean hasAlpha, int maxColors) {
+        IntHistogram colors = new IntHistogram(1024);
+        int run = 0;
+        int last = -1;
+        for (int p : pixels) {
+            if (hasAlpha && p >>> 24 <= TRANSPARENT_THRESHOLD) continue;
+            int rgb = p & 0xFFFFFF;
+            if (rgb == last) {
+                run++;
                 continue;
             }
-            int r = (rgb >> 16) & 0xff;
-            int g = (rgb >> 8) & 0xff;
-            int b = rgb & 0xff;
-            pixels.add(new Color(r, g, b));
-            mapping[i] = idxMap++;
+            if (run > 0) {
+                colors.add(last, run);
+                if (colors.size() > maxColors) return null;
+            }
+            last = rgb;
+            run = 1;
         }
+        if (run > 0) colors.add(last, run);
+        return colors.size() > maxColors ? null : colors;
+    }
 
-        // If no non-transparent pixels, return a copy preserving alpha
-        if (pixels.isEmpty()) {
-            BufferedImage outEmpty = new BufferedImage(w, h, hasAlpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
-            outEmpty.setRGB(0, 0, w, h, src, 0, w);
-            return outEmpty;
-        }
+    /* k-means++: the first center by weight, every next one with probability proportional to weight * D^2 */
+    static float[][] seedCentroids(Points points, int k, Random random) {
+        float[] cr = new float[k];
+        float[] cg = new float[k];
+        float[] cb = new float[k];
+        int first = pick(points, null, random);
+        cr[0] = points.r[first];
+        cg[0] = points.g[first];
+        cb[0] = points.b[first];
 
-        // Adjust k if there are fewer pixels than k
-        if (k <= 0) k = 1;
-        if (k > pixels.size()) k = pixels.size();
+        float[] d2 = new float[points.size];
+        Arrays.fill(d2, Float.MAX_VALUE);
+        for (int c = 1; c < k; c++) {
+            for (int i = 0; i < points.size; i++) {
+                float dr = points.r[i] - cr[c - 1];
+                float dg = points.g[i] - cg[c - 1];
+                float db = points.b[i] - cb[c - 1];
+                float d = dr * dr + dg * dg + db * db;
+                if (d < d2[i]) d2[i] = d;
+            }
+            int chosen = pick(points, d2, random);
+            cr[c] = points.r[chosen];
+            cg[c] = points.g[chosen];
+            cb[c] = points.b[chosen];
+        }
+        return new float[][]{cr, cg, cb};
+    }
 
-        Random rand = new Random();
-        List<Color> centroids = new ArrayList<>(k);
-        for (int i = 0; i < k; i++) {
-            centroids.add(pixels.get(rand.nextInt(pixels.size())));
+    /* point drawn with probability proportional to weight[i] * d2[i] (d2 null = 1), uniform if all are 0 */
+    private static int pick(Points points, float[] d2, Random random) {
+        double total = 0;
+        for (int i = 0; i < points.size; i++) total += (double) points.weight[i] * (d2 == null ? 1f : d2[i]);
+        if (total <= 0) return random.nextInt(points.size);
+        double target = random.nextDouble() * total;
+        for (int i = 0; i < points.size; i++) {
+            target -= (double) points.weight[i] * (d2 == null ? 1f : d2[i]);
+            if (target <= 0) return i;
         }
+        return points.size - 1;
+    }
 
-        // Main k-means loop
+    /*
+     * Point sets that fit in one batch run Lloyd iterations (centroid = mean of its points). Larger ones
+     * run mini-batch k-means: each iteration assigns the next batch of the shuffled points and moves every
+     * centroid to the running mean of all points it has been assigned so far.
+     */
+    static void train(Points points, float[][] centroids, int iterations) {
+        int k = centroids[0].length;
+        double[] seen = new double[k];
+        int batch = Math.min(BATCH_SIZE, points.size);
+        boolean lloyd = batch == points.size;
+        int offset = 0;
         for (int iter = 0; iter < iterations; iter++) {
-            // Prepare clusters: store sum r,g,b and count to avoid storing lists of points
-            float[] sumR = new float[k];
-            float[] sumG = new float[k];
-            float[] sumB = new float[k];
-            int[] counts = new int[k];
-
-            // Assign pixels to nearest centroid
-            for (Color p : pixels) {
-                int ci = PreprocessUtil.nearestCentroid(p, centroids);
-                sumR[ci] += p.r;
-                sumG[ci] += p.g;
-                sumB[ci] += p.b;
-                counts[ci]++;
-            }
+            int from = offset;
+            int to = Math.min(points.size, from + batch);
+            offset = to == points.size ? 0 : to;
 
-            // Recompute centroids; if cluster empty, reinitialize to random pixel
-            boolean changed = false;
-            for (int i = 0; i < k; i++) {
-                if (counts[i] == 0) {
-                    centroids.set(i, pixels.get(rand.nextInt(pixels.size())));
-                    changed = true;
-                    continue;
+            double[] sums = to - from > TASK_SIZE && ForkJoinPool.getCommonPoolParallelism() > 1
+                    ? ForkJoinPool.commonPool().invoke(new AssignTask(points, centroids, from, to))
+                    : assign(points, centroids, from, to);
+
+            float shift = 0;
+            for (int c = 0; c < k; c++) {
+                double weight = sums[c * 4 + 3];
+                if (weight == 0) continue;
+                seen[c] = lloyd ? weight : seen[c] + weight;
+                for (int ch = 0; ch < 3; ch++) {
+                    // running mean: c += (batchSum - batchWeight * c) / totalWeight
+                    float before = centroids[ch][c];
+                    centroids[ch][c] += (float) ((sums[c * 4 + ch] - weight * before) / seen[c]);
+                    float d = centroids[ch][c] - before;
+                    shift = Math.max(shift, d * d);
                 }
-                float nr = sumR[i] / counts[i];
-                float ng = sumG[i] / counts[i];
-                float nb = sumB[i] / counts[i];
-                Color old = centroids.get(i);
-                if (old.r != nr || old.g != ng || old.b != nb) changed = true;
-                centroids.set(i, new Color(nr, ng, nb));
             }
-
             // Early exit if centroids didn't change (converged)
-            if (!changed) break;
+            if (shift < CONVERGED && iter > 0) break;
         }
+    }
 
-        // Build output image preserving alpha/transparency: transparent pixels remain transparent
-        BufferedImage out = new BufferedImage(w, h, hasAlpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
-        int pos = 0;
-        for (int y = 0; y < h; y++) {
-            for (int x = 0; x < w; x++, pos++) {
-                int mapIdx = mapping[pos];
-                if (mapIdx == -1) {
-                    // Preserve original alpha (transparent or nearly transparent)
-                    if (hasAlpha) {
-                        out.setRGB(x, y, 0); // fully transparent
-                    } else {
-                        // no alpha: use original pixel
-                        out.setRGB(x, y, src[pos]);
-                    }
+    /* per-cluster weighted {sumR, sumG, sumB, weight} of the nearest-centroid assignment of points[from, to) */
+    static double[] assign(Points points, float[][] centroids, int from, int to) {
+        int k = centroids[0].length;
+        double[] sums = new double[k * 4];
+        for (int i = from; i < to; i++) {
+            int best = nearest(centroids, points.r[i], points.g[i], points.b[i]);
+            float weight = points.weight[i];
+            sums[best * 4] += weight * points.r[i];
+            sums[best * 4 + 1] += weight * points.g[i];
+            sums[best * 4 + 2] += weight * points.b[i];
+            sums[best * 4 + 3] += weight;
+        }
+        return sums;
+    }
+
+    private static int nearest(float[][] centroids, float r, float g, float b) {
+        float[] cr = centroids[0];
+        float[] cg = centroids[1];
+        float[] cb = centroids[2];
+        int best = 0;
+        float min = Float.MAX_VALUE;
+        for (int c = 0; c < cr.length; c++) {
+            float dr = r - cr[c];
+            float dg = g - cg[c];
+            float db = b - cb[c];
+            float d = dr * dr + dg * dg + db * db;
+            if (d < min) {
+                min = d;
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    /* halves the range until TASK_SIZE, partial sums are merged in a fixed order so results stay deterministic */
+    static final class AssignTask extends RecursiveTask<double[]> {
+        private final Points points;
+        private final float[][] centroids;
+        private final int from;
+        private final int to;
+
+        AssignTask(Points points, float[][] centroids, int from, int to) {
+            this.points = points;
+            this.centroids = centroids;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected double[] compute() {
+            if (to - from <= TASK_SIZE) return assign(points, centroids, from, to);
+            int mid = (from + to) >>> 1;
+            AssignTask left = new AssignTask(points, centroids, from, mid);
+            left.fork();
+            double[] right = new AssignTask(points, centroids, mid, to).compute();
+            double[] sums = left.join();
+            for (int i = 0; i < sums.length; i++) sums[i] += right[i];
+            return sums;
+        }
+    }
+
+    /* centroids as 0x00RRGGBB */
+    private static int[] palette(float[][] centroids) {
+        int k = centroids[0].length;
+        int[] palette = new int[k];
+        for (int c = 0; c < k; c++) {
+            palette[c] = clamp(centroids[0][c]) << 16 | clamp(centroids[1][c]) << 8 | clamp(centroids[2][c]);
+        }
+        return palette;
+    }
+
+    /* unique color -> palette color */
+    private static IntHistogram exactMapping(Points points, float[][] centroids, int[] palette) {
+        IntHistogram mapped = new IntHistogram(points.size);
+        for (int i = 0; i < points.size; i++) {
+            int rgb = (int) points.r[i] << 16 | (int) points.g[i] << 8 | (int) points.b[i];
+            mapped.put(rgb, palette[nearest(centroids, points.r[i], points.g[i], points.b[i])]);
+        }
+        return mapped;
+    }
+
+    /* Writes rgb(argb) with the source alpha in row bands, transparent pixels become 0 */
+    private static void mapPixels(int[] src, int[] dst, int w, int h, boolean hasAlpha, IntUnaryOperator rgb) {
+        bands(h).forEach(band -> {
+            int last = -1;
+            int lastColor = 0;
+            for (int i = band * BAND_ROWS * w, end = Math.min(h, (band + 1) * BAND_ROWS) * w; i < end; i++) {
+                int argb = src[i];
+                int a = argb >>> 24;
+                if (hasAlpha && a <= TRANSPARENT_THRESHOLD) {
+                    dst[i] = 0;
                     continue;
                 }
-                Color p = pixels.get(mapIdx);
-                Color c = centroids.get(PreprocessUtil.nearestCentroid(p, centroids));
-                int r = PreprocessUtil.clamp(Math.round(c.r));
-                int g = PreprocessUtil.clamp(Math.round(c.g));
-                int b = PreprocessUtil.clamp(Math.round(c.b));
-                if (hasAlpha) {
-                    int a = (src[pos] >> 24) & 0xff;
-                    int rgb = (a << 24) | (r << 16) | (g << 8) | b;
-                    out.setRGB(x, y, rgb);
-                } else {
-                    int rgb = (r << 16) | (g << 8) | b;
-                    out.setRGB(x, y, rgb);
+                if ((argb & 0xFFFFFF) != last) {
+                    last = argb & 0xFFFFFF;
+                    lastColor = rgb.applyAsInt(argb);
                 }
+                dst[i] = hasAlpha ? a << 24 | lastColor : lastColor;
             }
+        });
+    }
+
+    private static BufferedImage newImage(int w, int h, boolean hasAlpha) {
+        return new BufferedImage(w, h, hasAlpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+    }
+
+    private static int[] pixels(BufferedImage image) {
+        return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    }
+
+    private static int clamp(float v) {
+        return Math.max(0, Math.min(255, Math.round(v)));
+    }
+
+    private static IntStream bands(int rows) {
+        int count = (rows + BAND_ROWS - 1) / BAND_ROWS;
+        IntStream bands = IntStream.range(0, count);
+        return count > 1 && ForkJoinPool.getCommonPoolParallelism() > 1 ? bands.parallel() : bands;
+    }
+
+    /* Shuffled weighted points, one float array per channel */
+    static final class Points {
+        final float[] r;
+        final float[] g;
+        final float[] b;
+        final float[] weight;
+        final int size;
+
+        private Points(float[] r, float[] g, float[] b, float[] weight, int size, Random random) {
+            // Fisher-Yates, so consecutive batches are spread over the whole image
+            for (int i = size - 1; i > 0; i--) {
+                int s = random.nextInt(i + 1);
+                float t = r[i]; r[i] = r[s]; r[s] = t;
+                t = g[i]; g[i] = g[s]; g[s] = t;
+                t = b[i]; b[i] = b[s]; b[s] = t;
+                t = weight[i]; weight[i] = weight[s]; weight[s] = t;
+            }
+            this.r = r;
+            this.g = g;
+            this.b = b;
+            this.weight = weight;
+            this.size = size;
+        }
+
+        /* one point per unique color, weighted by its pixel count */
+        static Points weighted(IntHistogram colors, Random random) {
+            int[] keys = colors.keys();
+            int[] counts = colors.counts();
+            int n = keys.length;
+            float[] r = new float[n];
+            float[] g = new float[n];
+            float[] b = new float[n];
+            float[] weight = new float[n];
+            for (int i = 0; i < n; i++) {
+                r[i] = (keys[i] >> 16) & 0xFF;
+                g[i] = (keys[i] >> 8) & 0xFF;
+                b[i] = keys[i] & 0xFF;
+                weight[i] = counts[i];
+            }
+            return new Points(r, g, b, weight, n, random);
         }
 
-        return out;
+        /* up to MAX_SAMPLE opaque pixels, weight 1 */
+        static Points sample(int[] pixels, boolean hasAlpha, Random random) {
+            int opaque = 0;
+            if (hasAlpha) {
+                for (int p : pixels) if (p >>> 24 > TRANSPARENT_THRESHOLD) opaque++;
+            } else {
+                opaque = pixels.length;
+            }
+            int capacity = Math.min(opaque, MAX_SAMPLE);
+            float[] r = new float[capacity];
+            float[] g = new float[capacity];
+            float[] b = new float[capacity];
+            float[] weight = new float[capacity];
+
+            // jittered fractional stride: sample n is the opaque pixel at floor((n + u) * step), u in [0, 1),
+            // so the capacity samples are spread over all opaque pixels down to the last row
+            double step = capacity == 0 ? 1 : (double) opaque / capacity;
+            long next = (long) (random.nextDouble() * step);
+            int n = 0;
+            long j = 0;
+            for (int i = 0; i < pixels.length && n < capacity; i++) {
+                int p = pixels[i];
+                if (hasAlpha && p >>> 24 <= TRANSPARENT_THRESHOLD) continue;
+                if (j++ != next) continue;
+                r[n] = (p >> 16) & 0xFF;
+                g[n] = (p >> 8) & 0xFF;
+                b[n] = p & 0xFF;
+                weight[n] = 1f;
+                n++;
+                next = (long) ((n + random.nextDouble()) * step);
+            }
+            return new Points(r, g, b, weight, n, random);
+        }
     }
 }
@@ -0,0 +1,165 @@
+package id.rockierocker.image.preprocess;
+
+import id.rockierocker.image.preprocess.model.PreprocessConfig;
+import id.rockierocker.image.preprocess.util.IndexedPalette;
+import id.rockierocker.image.preprocess.util.PreprocessUtil;
+import id.rockierocker.image.preprocess.util.Rgb555Histogram;
+import lombok.extern.slf4j.Slf4j;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Median-cut color quantization in two passes over the pixels: one to build the 5-5-5 histogram,
+ * one to map through the palette LUT. Splitting works on histogram cells only, so its cost does not
+ * grow with the image size.
+ * <p>
+ * The box with the largest squared error is cut along its highest-variance channel, at the point that
+ * minimises the error of the two halves rather than at the pixel median, so a dominant flat background
+ * does not take most of the palette.
+ */
+@Slf4j
+public class MedianCutQuantization implements ImagePreprocess {
+
+    @Override
+    public BufferedImage process(BufferedImage inputImage, PreprocessConfig preprocessConfig) {
+        log.info("Applying Median Cut Quantization with k={}", preprocessConfig.getKColors());
+        return medianCutQuantization(inputImage, preprocessConfig.getKColors());
+    }
+
+    public static BufferedImage medianCutQuantization(BufferedImage img, int k) {
+        int w = img.getWidth();
+        int h = img.getHeight();
+        int[] src = PreprocessUtil.readPixels(img);
+        boolean hasAlpha = img.getColorModel().hasAlpha();
+
+        Rgb555Histogram histogram = Rgb555Histogram.of(src, hasAlpha);
+        int[] cells = histogram.cells();
+        // If no non-transparent pixels, every pixel is transparent anyway
+        if (cells.length == 0) return IndexedPalette.of(new int[]{0}).apply(src, w, h, hasAlpha);
+        return IndexedPalette.of(palette(histogram, cells, Math.max(1, k))).apply(src, w, h, hasAlpha);
+    }
+
+    static int[] palette(Rgb555Histogram histogram, int[] cells, int k) {
+        List<Box> boxes = new ArrayList<>();
+        boxes.add(new Box(histogram, cells, 0, cells.length));
+        while (boxes.size() < k) {
+            Box worst = null;
+            for (Box box : boxes) {
+                if (box.error() > 0 && (worst == null || box.error() > worst.error())) worst = box;
+            }
+            if (worst == null) break;
+            int mid = worst.split();
+            if (mid == worst.from || mid == worst.to) {
+                // rounding left a positive error on a channel with a single value
+                worst.frozen = true;
+                continue;
+            }
+            boxes.remove(worst);
+            boxes.add(new Box(histogram, cells, worst.from, mid));
+            boxes.add(new Box(histogram, cells, mid, worst.to));
+        }
+
+        int[] palette = new int[boxes.size()];
+        for (int i = 0; i < palette.length; i++) {
+            palette[i] = histogram.mean(cells, boxes.get(i).from, boxes.get(i).to);
+        }
+        return palette;
+    }
+
+    /*
+     * cells[from, to) with pixel count, channel sums and per-channel squared error. The error treats
+     * every pixel as its cell mean, which is exact up to the spread inside a cell.
+     */
+    private static final class Box {
+        private final Rgb555Histogram histogram;
+        private final int[] cells;
+        final int from;
+        final int to;
+        private final double[] error = new double[3];
+        boolean frozen;
+
+        Box(Rgb555Histogram histogram, int[] cells, int from, int to) {
+            this.histogram = histogram;
+            this.cells = cells;
+            this.from = from;
+            this.to = to;
+            double n = 0;
+            double[] sum = new double[3];
+            double[] square = new double[3];
+            for (int i = from; i < to; i++) {
+                int cell = cells[i];
+                double count = histogram.count[cell];
+                n += count;
+                for (int axis = 0; axis < 3; axis++) {
+                    double s = sum(cell, axis);
+                    sum[axis] += s;
+                    square[axis] += s * s / count;
+                }
+            }
+            for (int axis = 0; axis < 3; axis++) {
+                error[axis] = Math.max(0, square[axis] - sum[axis] * sum[axis] / n);
+            }
+        }
+
+        double error() {
+            return to - from > 1 && !frozen ? error[0] + error[1] + error[2] : 0;
+        }
+
+        /* reorders the cells by their 5-bit value on the worst channel and returns the first index of the upper part */
+        int split() {
+            int axis = 0;
+            for (int a = 1; a < 3; a++) {
+                if (error[a] > error[axis]) axis = a;
+            }
+
+            double[] bucketCount = new double[32];
+            double[] bucketSum = new double[32];
+            for (int i = from; i < to; i++) {
+                int v = channel(cells[i], axis);
+                bucketCount[v] += histogram.count[cells[i]];
+                bucketSum[v] += sum(cells[i], axis);
+            }
+            double totalCount = 0, totalSum = 0;
+            for (int v = 0; v < 32; v++) {
+                totalCount += bucketCount[v];
+                totalSum += bucketSum[v];
+            }
+
+            // threshold t puts values < t below; maximise s_lo^2 / n_lo + s_hi^2 / n_hi
+            int threshold = -1;
+            double best = -1, lowCount = 0, lowSum = 0;
+            for (int t = 1; t < 32; t++) {
+                lowCount += bucketCount[t - 1];
+                lowSum += bucketSum[t - 1];
+                double highCount = totalCount - lowCount;
+                if (lowCount == 0 || highCount == 0) continue;
+                double highSum = totalSum - lowSum;
+                double score = lowSum * lowSum / lowCount + highSum * highSum / highCount;
+                if (score > best) {
+                    best = score;
+                    threshold = t;
+                }
+            }
+
+            int mid = from;
+            for (int i = from; i < to; i++) {
+                if (channel(cells[i], axis) < threshold) {
+                    int swap = cells[mid];
+                    cells[mid++] = cells[i];
+                    cells[i] = swap;
+                }
+            }
+            return mid;
+        }
+
+        private double sum(int cell, int axis) {
+            return axis == 0 ? histogram.sumR[cell] : axis == 1 ? histogram.sumG[cell] : histogram.sumB[cell];
+        }
+
+        private static int channel(int cell, int axis) {
+            return (cell >> (10 - axis * 5)) & 0x1F;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package id.rockierocker.image.preprocess;
+
+import id.rockierocker.image.preprocess.model.PreprocessConfig;
+import id.rockierocker.image.preprocess.util.IndexedPalette;
+import id.rockierocker.image.preprocess.util.PreprocessUtil;
+import id.rockierocker.image.preprocess.util.Rgb555Histogram;
+import lombok.extern.slf4j.Slf4j;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * Octree color quantization in two passes over the pixels. The 5-5-5 histogram holds the depth-5
+ * leaves of the tree; levels above are reduced bottom-up, folding the least populated nodes into
+ * their parent first, until at most k leaves remain. When folding a whole node would drop below k,
+ * the last few leaves are merged pairwise by least added squared error instead. Leaf means form
+ * the palette.
+ */
+@Slf4j
+public class OctreeQuantization implements ImagePreprocess {
+
+    private static final int DEPTH = 5;
+
+    @Override
+    public BufferedImage process(BufferedImage inputImage, PreprocessConfig preprocessConfig) {
+        log.info("Applying Octree Quantization with k={}", preprocessConfig.getKColors());
+        return octreeQuantization(inputImage, preprocessConfig.getKColors());
+    }
+
+    public static BufferedImage octreeQuantization(BufferedImage img, int k) {
+        int w = img.getWidth();
+        int h = img.getHeight();
+        int[] src = PreprocessUtil.readPixels(img);
+        boolean hasAlpha = img.getColorModel().hasAlpha();
+
+        Rgb555Histogram histogram = Rgb555Histogram.of(src, hasAlpha);
+        int[] palette = palette(histogram, Math.max(1, k));
+        // If no non-transparent pixels, return the pixels unchanged
+        if (palette.length == 0) palette = new int[]{0};
+        return IndexedPalette.of(palette).apply(src, w, h, hasAlpha);
+    }
+
+    /*
+     * count/sum arrays per level, indexed by node(r, g, b, level) over the 5-bit cell coordinates.
+     * leaf[level][node] marks the nodes currently holding a palette entry.
+     */
+    static int[] palette(Rgb555Histogram histogram, int k) {
+        long[][] count = new long[DEPTH + 1][];
+        long[][] sumR = new long[DEPTH + 1][];
+        long[][] sumG = new long[DEPTH + 1][];
+        long[][] sumB = new long[DEPTH + 1][];
+        boolean[][] leaf = new boolean[DEPTH + 1][];
+        for (int level = 0; level <= DEPTH; level++) {
+            int nodes = 1 << (3 * level);
+            count[level] = new long[nodes];
+            sumR[level] = new long[nodes];
+            sumG[level] = new long[nodes];
+            sumB[level] = new long[nodes];
+            leaf[level] = new boolean[nodes];
+        }
+
+        int leaves = 0;
+        for (int cell = 0; cell < Rgb555Histogram.CELLS; cell++) {
+            if (histogram.count[cell] == 0) continue;
+            int r = cell >> 10, g = (cell >> 5) & 0x1F, b = cell & 0x1F;
+            for (int level = 0; level <= DEPTH; level++) {
+                int node = node(r, g, b, level);
+                count[level][node] += histogram.count[cell];
+                sumR[level][node] += histogram.sumR[cell];
+                sumG[level][node] += histogram.sumG[cell];
+                sumB[level][node] += histogram.sumB[cell];
+            }
+            leaf[DEPTH][cell(r, g, b)] = true;
+            leaves++;
+        }
+
+        // fold the children of the least populated nodes, deepest level first, never below k leaves
+        for (int level = DEPTH - 1; level >= 0 && leaves > k; level--) {
+            int nodes = count[level].length;
+            long[] order = new long[nodes];
+            int n = 0;
+            for (int node = 0; node < nodes; node++) {
+                if (count[level][node] > 0) order[n++] = count[level][node] << 24 | node;
+            }
+            Arrays.sort(order, 0, n);
+            boolean complete = true;
+            for (int i = 0; i < n && leaves > k; i++) {
+                int node = (int) (order[i] & 0xFFFFFF);
+                int children = 0;
+                for (int child = node << 3, end = child + 8; child < end; child++) {
+                    if (leaf[level + 1][child]) children++;
+                }
+                if (leaves - (children - 1) < k) {
+                    complete = false;
+                    continue;
+                }
+                for (int child = node << 3, end = child + 8; child < end; child++) leaf[level + 1][child] = false;
+                leaf[level][node] = true;
+                leaves -= children - 1;
+            }
+            // a level above is only foldable once every node here is a leaf
+            if (!complete) break;
+        }
+
+        // leaf means, then Ward merges of the closest pairs for the few leaves a whole fold would overshoot
+        long[] leafCount = new long[leaves];
+        double[][] leafMean = new double[leaves][];
+        int i = 0;
+        for (int level = 0; level <= DEPTH; level++) {
+            for (int node = 0; node < count[level].length; node++) {
+                if (!leaf[level][node]) continue;
+                long c = count[level][node];
+                leafCount[i] = c;
+                leafMean[i++] = new double[]{(double) sumR[level][node] / c, (double) sumG[level][node] / c, (double) sumB[level][node] / c};
+            }
+        }
+        for (int size = leaves; size > k; size--) {
+            int bestA = 0, bestB = 1;
+            double bestCost = Double.MAX_VALUE;
+            for (int a = 0; a < size; a++) {
+                for (int b = a + 1; b < size; b++) {
+                    double d = 0;
+                    for (int ch = 0; ch < 3; ch++) d += (leafMean[a][ch] - leafMean[b][ch]) * (leafMean[a][ch] - leafMean[b][ch]);
+                    double cost = d * leafCount[a] * leafCount[b] / (leafCount[a] + leafCount[b]);
+                    if (cost < bestCost) {
+                        bestCost = cost;
+                        bestA = a;
+                        bestB = b;
+                    }
+                }
+            }
+            long merged = leafCount[bestA] + leafCount[bestB];
+            for (int ch = 0; ch < 3; ch++) {
+                leafMean[bestA][ch] = (leafMean[bestA][ch] * leafCount[bestA] + leafMean[bestB][ch] * leafCount[bestB]) / merged;
+            }
+            leafCount[bestA] = merged;
+            leafCount[bestB] = leafCount[size - 1];
+            leafMean[bestB] = leafMean[size - 1];
+        }
+
+        int[] palette = new int[Math.min(leaves, k)];
+        for (int p = 0; p < palette.length; p++) {
+            palette[p] = clamp(leafMean[p][0]) << 16 | clamp(leafMean[p][1]) << 8 | clamp(leafMean[p][2]);
+        }
+        return palette;
+    }
+
+    private static int clamp(double v) {
+        return Math.max(0, Math.min(255, (int) Math.round(v)));
+    }
+
+    /* interleaves the top level bits of each channel, so the children of node n are 8n .. 8n + 7 */
+    private static int node(int r, int g, int b, int level) {
+        int node = 0;
+        for (int bit = DEPTH - 1; bit >= DEPTH - level; bit--) {
+            node = node << 3 | ((r >> bit) & 1) << 2 | ((g >> bit) & 1) << 1 | ((b >> bit) & 1);
+        }
+        return node;
+    }
+
+    private static int cell(int r, int g, int b) {
+        return node(r, g, b, DEPTH);
+    }
+}
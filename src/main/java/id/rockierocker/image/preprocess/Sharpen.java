@@ -2,7 +2,7 @@ package id.rockierocker.image.preprocess;
 
 
 import id.rockierocker.image.preprocess.model.PreprocessConfig;
-import id.rockierocker.image.preprocess.util.PreprocessUtil;
+import id.rockierocker.image.preprocess.util.Convolution;
 import lombok.extern.slf4j.Slf4j;
 
 import java.awt.image.BufferedImage;
@@ -21,43 +21,8 @@ public class Sharpen implements ImagePreprocess {
     // SHARPEN
     // =========================
     static BufferedImage sharpen(BufferedImage img, List<List<Float>> sharpenKernel) {
-        int w = img.getWidth();
-        int h = img.getHeight();
-        boolean hasAlpha = img.getColorModel().hasAlpha();
-        // choose ARGB if source has alpha so we can preserve transparency
-        BufferedImage out = new BufferedImage(w, h, hasAlpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
-
-        // Read source pixels in bulk for faster access
-        int[] src = img.getRGB(0, 0, w, h, null, 0, w);
-        int[] dst = new int[src.length];
-
-        // For performance, copy border pixels directly (don't apply kernel) to avoid out-of-bounds handling
-        for (int y = 0; y < h; y++) {
-            for (int x = 0; x < w; x++) {
-                int pos = y * w + x;
-                if (x == 0 || y == 0 || x == w - 1 || y == h - 1) {
-                    // copy original pixel (preserve alpha if present)
-                    dst[pos] = src[pos];
-                    continue;
-                }
-
-                // apply kernel per channel using existing utility (keeps existing kernel semantics)
-                int r = PreprocessUtil.applyKernel(img, x, y, 16, sharpenKernel);
-                int g = PreprocessUtil.applyKernel(img, x, y, 8, sharpenKernel);
-                int b = PreprocessUtil.applyKernel(img, x, y, 0, sharpenKernel);
-
-                r = PreprocessUtil.clamp(r);
-                g = PreprocessUtil.clamp(g);
-                b = PreprocessUtil.clamp(b);
-
-                int a = hasAlpha ? ((src[pos] >> 24) & 0xff) : 0xff;
-                dst[pos] = (a << 24) | (r << 16) | (g << 8) | b;
-            }
-        }
-
-        // Write all pixels back in one call
-        out.setRGB(0, 0, w, h, dst, 0, w);
-        return out;
+        // any odd-sized kernel; the border is filtered too, mirroring the pixels next to it
+        return Convolution.convolve(img, Convolution.flatten(sharpenKernel), Convolution.Border.REFLECT);
     }
 
 }
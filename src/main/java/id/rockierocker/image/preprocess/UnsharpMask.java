@@ -0,0 +1,54 @@
+package id.rockierocker.image.preprocess;
+
+
+import id.rockierocker.image.preprocess.model.PreprocessConfig;
+import id.rockierocker.image.preprocess.util.PreprocessUtil;
+import lombok.extern.slf4j.Slf4j;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Objects;
+
+@Slf4j
+public class UnsharpMask implements ImagePreprocess {
+
+    static final float DEFAULT_AMOUNT = 1.0f;
+
+    @Override
+    public BufferedImage process(BufferedImage inputImage, PreprocessConfig preprocessConfig) {
+        float sigma = Objects.requireNonNullElse(preprocessConfig.getBlurSigma(), GaussianBlur.DEFAULT_SIGMA);
+        float amount = Objects.requireNonNullElse(preprocessConfig.getUnsharpAmount(), DEFAULT_AMOUNT);
+        log.info("Applying unsharp mask with sigma: {}, amount: {}", sigma, amount);
+        return unsharpMask(inputImage, sigma, amount);
+    }
+
+    // =========================
+    // UNSHARP MASK
+    // =========================
+    static BufferedImage unsharpMask(BufferedImage img, float sigma, float amount) {
+        // Fast path: nothing to add back
+        if (sigma <= 0 || amount == 0) return img;
+
+        // blurred copy from the convolution engine, always TYPE_INT_ARGB / TYPE_INT_RGB
+        BufferedImage out = GaussianBlur.gaussianBlur(img, sigma);
+        int[] blurred = ((DataBufferInt) out.getRaster().getDataBuffer()).getData();
+        int[] src = PreprocessUtil.readPixels(img);
+        boolean hasAlpha = img.getColorModel().hasAlpha();
+
+        // src + amount * (src - blurred), written over the blurred pixels
+        for (int i = 0; i < src.length; i++) {
+            int s = src[i];
+            int b = blurred[i];
+            int r = sharpen((s >> 16) & 0xFF, (b >> 16) & 0xFF, amount);
+            int g = sharpen((s >> 8) & 0xFF, (b >> 8) & 0xFF, amount);
+            int bl = sharpen(s & 0xFF, b & 0xFF, amount);
+            int a = hasAlpha ? s & 0xFF000000 : 0;
+            blurred[i] = a | r << 16 | g << 8 | bl;
+        }
+        return out;
+    }
+
+    private static int sharpen(int original, int blurred, float amount) {
+        return PreprocessUtil.clamp(Math.round(original + amount * (original - blurred)));
+    }
+}
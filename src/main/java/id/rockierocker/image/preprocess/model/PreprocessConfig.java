@@ -14,4 +14,8 @@ public class PreprocessConfig {
     private Float contrast;
     private Integer iterations;
     private List<List<Float>> sharpenKernel;
+    private Float blurSigma;
+    private Float unsharpAmount;
+    private Integer outlineRadius;
+    private String outlineMode;
 }
@@ -0,0 +1,154 @@
+package id.rockierocker.image.preprocess.util;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Erodes the opaque area of an image by a radius in pixels, measured from the nearest transparent
+ * pixel (alpha <= {@link PreprocessUtil#TRANSPARENT_ALPHA}) with an exact Euclidean distance transform.
+ * <p>
+ * The transform is separable: a column pass gives the vertical distance to the nearest transparent
+ * pixel, then each row takes the lower envelope of the parabolas {@code (x - q)^2 + g(q)^2}
+ * (Felzenszwalb and Huttenlocher). Both passes are linear in the number of pixels, whatever the
+ * radius. Pixels outside the image count as opaque, so an image without transparency is unchanged.
+ */
+public class AlphaErosion {
+
+    public enum Mode {
+        /* clear every pixel within the radius */
+        HARD,
+        /* fade alpha in linearly from radius / 2 to radius * 3 / 2, centred on the hard edge */
+        SOFT;
+
+        public static Mode fromString(String name) {
+            for (Mode m : Mode.values()) {
+                if (m.name().equalsIgnoreCase(name)) {
+                    return m;
+                }
+            }
+            throw new IllegalArgumentException("Unknown outline mode: " + name);
+        }
+    }
+
+    /* rows, or columns in the column pass, per fork-join task */
+    private static final int BAND = 64;
+
+    /**
+     * New TYPE_INT_ARGB image with the pixels within {@code radius} of transparency cleared (HARD)
+     * or faded (SOFT). Images without alpha are returned as is.
+     */
+    public static BufferedImage erode(BufferedImage img, float radius, Mode mode) {
+        if (radius <= 0 || !img.getColorModel().hasAlpha()) return img;
+        int w = img.getWidth();
+        int h = img.getHeight();
+        int[] src = PreprocessUtil.readPixels(img);
+        int[] columnDistance = columnDistance(src, w, h);
+
+        BufferedImage out = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+        int[] dst = ((DataBufferInt) out.getRaster().getDataBuffer()).getData();
+        // squared distances at which a pixel is cleared / kept in full
+        double clear = mode == Mode.HARD ? (double) radius * radius : Math.pow(radius / 2, 2);
+        double keep = mode == Mode.HARD ? clear : Math.pow(radius * 1.5, 2);
+
+        bands(h).forEach(band -> {
+            double[] f = new double[w];
+            double[] d = new double[w];
+            int[] v = new int[w];
+            double[] z = new double[w + 1];
+            for (int y = band * BAND, end = Math.min(h, y + BAND); y < end; y++) {
+                int row = y * w;
+                for (int x = 0; x < w; x++) {
+                    double g = columnDistance[row + x];
+                    f[x] = g * g;
+                }
+                distanceSquared(f, d, v, z, w);
+                for (int x = 0, i = row; x < w; x++, i++) {
+                    int argb = src[i];
+                    if (d[x] <= clear) {
+                        dst[i] = 0;
+                    } else if (d[x] >= keep) {
+                        dst[i] = argb;
+                    } else {
+                        double t = (Math.sqrt(d[x]) - radius / 2) / radius;
+                        int a = (int) Math.round((argb >>> 24) * t);
+                        dst[i] = a == 0 ? 0 : a << 24 | (argb & 0xFFFFFF);
+                    }
+                }
+            }
+        });
+        return out;
+    }
+
+    /*
+     * distance along the column to the nearest transparent pixel, or w + h when the column has none,
+     * from a top-down and a bottom-up sweep over whole rows at a time
+     */
+    static int[] columnDistance(int[] src, int w, int h) {
+        int none = w + h;
+        int[] g = new int[w * h];
+        bands(w).forEach(band -> {
+            int from = band * BAND, to = Math.min(w, from + BAND);
+            for (int x = from; x < to; x++) {
+                g[x] = transparent(src[x]) ? 0 : none;
+            }
+            for (int y = 1; y < h; y++) {
+                int row = y * w;
+                for (int x = from; x < to; x++) {
+                    g[row + x] = transparent(src[row + x]) ? 0 : Math.min(none, g[row - w + x] + 1);
+                }
+            }
+            for (int y = h - 2; y >= 0; y--) {
+                int row = y * w;
+                for (int x = from; x < to; x++) {
+                    g[row + x] = Math.min(g[row + x], g[row + w + x] + 1);
+                }
+            }
+        });
+        return g;
+    }
+
+    /*
+     * 1D squared distance transform of the sampled function f over [0, n): d[q] = min_p (q - p)^2 + f[p].
+     * v holds the parabolas of the lower envelope, z the boundaries between them.
+     */
+    static void distanceSquared(double[] f, double[] d, int[] v, double[] z, int n) {
+        int k = 0;
+        v[0] = 0;
+        z[0] = Double.NEGATIVE_INFINITY;
+        z[1] = Double.POSITIVE_INFINITY;
+        for (int q = 1; q < n; q++) {
+            double s = intersection(f, q, v[k]);
+            while (s <= z[k]) {
+                k--;
+                s = intersection(f, q, v[k]);
+            }
+            k++;
+            v[k] = q;
+            z[k] = s;
+            z[k + 1] = Double.POSITIVE_INFINITY;
+        }
+        k = 0;
+        for (int q = 0; q < n; q++) {
+            while (z[k + 1] < q) k++;
+            double dq = q - v[k];
+            d[q] = dq * dq + f[v[k]];
+        }
+    }
+
+    /* x where the parabolas rooted at p < q cross */
+    private static double intersection(double[] f, int q, int p) {
+        return ((f[q] + (double) q * q) - (f[p] + (double) p * p)) / (2.0 * (q - p));
+    }
+
+    private static boolean transparent(int argb) {
+        return argb >>> 24 <= PreprocessUtil.TRANSPARENT_ALPHA;
+    }
+
+    private static IntStream bands(int rows) {
+        int count = (rows + BAND - 1) / BAND;
+        IntStream bands = IntStream.range(0, count);
+        return count > 1 && ForkJoinPool.getCommonPoolParallelism() > 1 ? bands.parallel() : bands;
+    }
+}
@@ -0,0 +1,268 @@
+package id.rockierocker.image.preprocess.util;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Convolution of the RGB channels with an odd-sized square kernel, given flattened row-major.
+ * Alpha is kept as is.
+ * <p>
+ * The image is processed in tiles of rows on the common fork-join pool. Each tile unpacks its rows,
+ * plus a halo of {@code radius} rows and columns resolved by the {@link Border} policy, into float
+ * channel planes once; every output pixel is then filtered, the image border included. A rank-1
+ * kernel (box, Gaussian, ...) is split into a horizontal and a vertical pass, {@code 2n} instead of
+ * {@code n^2} multiply-adds per pixel.
+ */
+public class Convolution {
+
+    public enum Border {
+        /* repeat the edge pixel: aaa|abc */
+        CLAMP,
+        /* mirror around the edge pixel: cb|abc */
+        REFLECT
+    }
+
+    /* output rows per fork-join task */
+    private static final int TILE_ROWS = 64;
+
+    /* relative tolerance when testing a kernel for rank 1 */
+    private static final float SEPARABLE_EPSILON = 1e-5f;
+
+    /**
+     * Convolve with a flattened {@code size x size} kernel, {@code size} odd, using the separable
+     * passes when the kernel factors into a column times a row.
+     */
+    public static BufferedImage convolve(BufferedImage img, float[] kernel, Border border) {
+        int size = kernelSize(kernel.length);
+        float[][] factors = separate(kernel, size);
+        if (factors != null) return convolveSeparable(img, factors[0], factors[1], border);
+
+        int radius = size / 2;
+        return filter(img, radius, border, (tile, rows, w, pw, out) -> {
+            float[] tr = tile.r, tg = tile.g, tb = tile.b;
+            float[] ar = new float[w];
+            float[] ag = new float[w];
+            float[] ab = new float[w];
+            for (int y = 0; y < rows; y++) {
+                Arrays.fill(ar, 0f);
+                Arrays.fill(ag, 0f);
+                Arrays.fill(ab, 0f);
+                // one kernel tap at a time over the whole row, the inner loop runs over contiguous memory
+                for (int ky = 0, k = 0; ky < size; ky++) {
+                    for (int kx = 0; kx < size; kx++, k++) {
+                        float wgt = kernel[k];
+                        if (wgt == 0) continue;
+                        int base = (y + ky) * pw + kx;
+                        for (int x = 0; x < w; x++) {
+                            ar[x] += wgt * tr[base + x];
+                            ag[x] += wgt * tg[base + x];
+                            ab[x] += wgt * tb[base + x];
+                        }
+                    }
+                }
+                out.row(y, ar, ag, ab);
+            }
+        });
+    }
+
+    /**
+     * Convolve with the kernel {@code vertical^T x horizontal}: a horizontal pass over the tile rows,
+     * then a vertical pass over its result. Both arrays must have the same odd length.
+     */
+    public static BufferedImage convolveSeparable(BufferedImage img, float[] horizontal, float[] vertical, Border border) {
+        int size = horizontal.length;
+        if (vertical.length != size || size % 2 == 0)
+            throw new IllegalArgumentException("Separable kernel needs two arrays of the same odd length, got "
+                    + horizontal.length + " and " + vertical.length);
+
+        int radius = size / 2;
+        return filter(img, radius, border, (tile, rows, w, pw, out) -> {
+            int haloRows = rows + 2 * radius;
+            float[] tr = tile.r, tg = tile.g, tb = tile.b;
+            float[] hr = new float[haloRows * w];
+            float[] hg = new float[haloRows * w];
+            float[] hb = new float[haloRows * w];
+            // tap by tap over whole rows so the inner loops run over contiguous memory
+            for (int y = 0; y < haloRows; y++) {
+                int row = y * w;
+                for (int k = 0; k < size; k++) {
+                    float wgt = horizontal[k];
+                    if (wgt == 0) continue;
+                    int base = y * pw + k;
+                    for (int x = 0; x < w; x++) {
+                        hr[row + x] += wgt * tr[base + x];
+                        hg[row + x] += wgt * tg[base + x];
+                        hb[row + x] += wgt * tb[base + x];
+                    }
+                }
+            }
+
+            float[] ar = new float[w];
+            float[] ag = new float[w];
+            float[] ab = new float[w];
+            for (int y = 0; y < rows; y++) {
+                Arrays.fill(ar, 0f);
+                Arrays.fill(ag, 0f);
+                Arrays.fill(ab, 0f);
+                for (int k = 0; k < size; k++) {
+                    float wgt = vertical[k];
+                    if (wgt == 0) continue;
+                    int base = (y + k) * w;
+                    for (int x = 0; x < w; x++) {
+                        ar[x] += wgt * hr[base + x];
+                        ag[x] += wgt * hg[base + x];
+                        ab[x] += wgt * hb[base + x];
+                    }
+                }
+                out.row(y, ar, ag, ab);
+            }
+        });
+    }
+
+    /**
+     * Normalized 1D Gaussian of radius {@code ceil(3 sigma)}, for {@link #convolveSeparable}.
+     */
+    public static float[] gaussian(double sigma) {
+        if (!(sigma > 0)) throw new IllegalArgumentException("Gaussian sigma must be positive, got " + sigma);
+        int radius = Math.max(1, (int) Math.ceil(3 * sigma));
+        float[] kernel = new float[2 * radius + 1];
+        double sum = 0;
+        for (int i = -radius; i <= radius; i++) {
+            double v = Math.exp(-i * i / (2 * sigma * sigma));
+            kernel[i + radius] = (float) v;
+            sum += v;
+        }
+        for (int i = 0; i < kernel.length; i++) kernel[i] /= (float) sum;
+        return kernel;
+    }
+
+    /**
+     * Row-major copy of a square kernel as stored in the preprocess config.
+     */
+    public static float[] flatten(List<List<Float>> kernel) {
+        int size = kernel.size();
+        float[] flat = new float[size * size];
+        for (int y = 0; y < size; y++) {
+            List<Float> row = kernel.get(y);
+            if (row.size() != size)
+                throw new IllegalArgumentException("Kernel must be square, row " + y + " has " + row.size() + " of " + size);
+            for (int x = 0; x < size; x++) flat[y * size + x] = row.get(x);
+        }
+        kernelSize(flat.length);
+        return flat;
+    }
+
+    private static int kernelSize(int length) {
+        int size = (int) Math.round(Math.sqrt(length));
+        if (size * size != length || size % 2 == 0)
+            throw new IllegalArgumentException("Kernel must be an odd-sized square, got " + length + " values");
+        return size;
+    }
+
+    /*
+     * column and row factors of a rank-1 kernel, null otherwise. Factoring goes through the entry
+     * with the largest magnitude: k[i][j] == k[i][pj] * k[pi][j] / k[pi][pj] for every i, j.
+     */
+    static float[][] separate(float[] kernel, int size) {
+        int pivot = 0;
+        for (int i = 1; i < kernel.length; i++) {
+            if (Math.abs(kernel[i]) > Math.abs(kernel[pivot])) pivot = i;
+        }
+        float p = kernel[pivot];
+        if (p == 0 || size == 1) return null;
+        int pi = pivot / size, pj = pivot % size;
+        float[] vertical = new float[size];
+        float[] horizontal = new float[size];
+        for (int i = 0; i < size; i++) {
+            vertical[i] = kernel[i * size + pj];
+            horizontal[i] = kernel[pi * size + i] / p;
+        }
+        float tolerance = SEPARABLE_EPSILON * Math.abs(p);
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                if (Math.abs(kernel[i * size + j] - vertical[i] * horizontal[j]) > tolerance) return null;
+            }
+        }
+        return new float[][]{horizontal, vertical};
+    }
+
+    /* source index for position i along an axis of length n */
+    static int borderIndex(int i, int n, Border border) {
+        if (i >= 0 && i < n) return i;
+        if (border == Border.REFLECT && n > 1) {
+            int period = 2 * n - 2;
+            i = Math.floorMod(i, period);
+            return i < n ? i : period - i;
+        }
+        return i < 0 ? 0 : n - 1;
+    }
+
+    /* the float RGB planes of one tile: rows [y0 - radius, y1 + radius), columns [-radius, w + radius) */
+    private static final class Tile {
+        final float[] r;
+        final float[] g;
+        final float[] b;
+
+        Tile(int size) {
+            r = new float[size];
+            g = new float[size];
+            b = new float[size];
+        }
+    }
+
+    /* writes one filtered row of the tile into the destination, alpha from the source */
+    private interface Output {
+        void row(int y, float[] r, float[] g, float[] b);
+    }
+
+    private interface TileFilter {
+        void apply(Tile tile, int rows, int w, int paddedWidth, Output out);
+    }
+
+    private static BufferedImage filter(BufferedImage img, int radius, Border border, TileFilter tileFilter) {
+        int w = img.getWidth();
+        int h = img.getHeight();
+        boolean hasAlpha = img.getColorModel().hasAlpha();
+        int[] src = PreprocessUtil.readPixels(img);
+        BufferedImage out = new BufferedImage(w, h, hasAlpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        int[] dst = ((DataBufferInt) out.getRaster().getDataBuffer()).getData();
+
+        int pw = w + 2 * radius;
+        int[] columns = new int[pw];
+        for (int x = 0; x < pw; x++) columns[x] = borderIndex(x - radius, w, border);
+
+        int tiles = (h + TILE_ROWS - 1) / TILE_ROWS;
+        IntStream range = IntStream.range(0, tiles);
+        if (tiles > 1 && ForkJoinPool.getCommonPoolParallelism() > 1) range = range.parallel();
+        range.forEach(t -> {
+            int y0 = t * TILE_ROWS;
+            int rows = Math.min(h, y0 + TILE_ROWS) - y0;
+            Tile tile = new Tile((rows + 2 * radius) * pw);
+            for (int y = 0, i = 0; y < rows + 2 * radius; y++) {
+                int row = borderIndex(y0 + y - radius, h, border) * w;
+                for (int x = 0; x < pw; x++, i++) {
+                    int argb = src[row + columns[x]];
+                    tile.r[i] = (argb >> 16) & 0xFF;
+                    tile.g[i] = (argb >> 8) & 0xFF;
+                    tile.b[i] = argb & 0xFF;
+                }
+            }
+            tileFilter.apply(tile, rows, w, pw, (y, r, g, b) -> {
+                for (int x = 0, i = (y0 + y) * w; x < w; x++, i++) {
+                    int a = hasAlpha ? src[i] & 0xFF000000 : 0;
+                    dst[i] = a | clamp(r[x]) << 16 | clamp(g[x]) << 8 | clamp(b[x]);
+                }
+            });
+        });
+        return out;
+    }
+
+    private static int clamp(float v) {
+        int i = Math.round(v);
+        return i < 0 ? 0 : Math.min(i, 255);
+    }
+}
@@ -0,0 +1,85 @@
+package id.rockierocker.image.preprocess.util;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * A palette of up to 65536 colors (0x00RRGGBB) with a 15-bit RGB -> palette index lookup table,
+ * each 5-5-5 cell pointing at the palette entry nearest to the cell center.
+ */
+public class IndexedPalette {
+
+    private static final int BAND_ROWS = 64;
+
+    private final int[] colors;
+    private final short[] lut;
+
+    private IndexedPalette(int[] colors, short[] lut) {
+        this.colors = colors;
+        this.lut = lut;
+    }
+
+    public static IndexedPalette of(int[] colors) {
+        if (colors.length == 0 || colors.length > 1 << 16)
+            throw new IllegalArgumentException("Palette needs 1..65536 colors, got " + colors.length);
+        short[] lut = new short[Rgb555Histogram.CELLS];
+        for (int cell = 0; cell < lut.length; cell++) {
+            int r = ((cell >> 10) << 3) + 4;
+            int g = (((cell >> 5) & 0x1F) << 3) + 4;
+            int b = ((cell & 0x1F) << 3) + 4;
+            int best = 0;
+            int min = Integer.MAX_VALUE;
+            for (int i = 0; i < colors.length; i++) {
+                int dr = r - ((colors[i] >> 16) & 0xFF);
+                int dg = g - ((colors[i] >> 8) & 0xFF);
+                int db = b - (colors[i] & 0xFF);
+                int d = dr * dr + dg * dg + db * db;
+                if (d < min) {
+                    min = d;
+                    best = i;
+                }
+            }
+            lut[cell] = (short) best;
+        }
+        return new IndexedPalette(colors.clone(), lut);
+    }
+
+    public int size() {
+        return colors.length;
+    }
+
+    public int[] colors() {
+        return colors.clone();
+    }
+
+    public int indexOf(int argb) {
+        return lut[Rgb555Histogram.cell(argb)] & 0xFFFF;
+    }
+
+    /**
+     * Maps every pixel to its palette color in row bands, keeping the source alpha; pixels with
+     * alpha <= {@link PreprocessUtil#TRANSPARENT_ALPHA} become fully transparent.
+     */
+    public BufferedImage apply(int[] src, int w, int h, boolean hasAlpha) {
+        BufferedImage out = new BufferedImage(w, h, hasAlpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        int[] dst = ((DataBufferInt) out.getRaster().getDataBuffer()).getData();
+        int bands = (h + BAND_ROWS - 1) / BAND_ROWS;
+        IntStream range = IntStream.range(0, bands);
+        if (bands > 1 && ForkJoinPool.getCommonPoolParallelism() > 1) range = range.parallel();
+        range.forEach(band -> {
+            for (int i = band * BAND_ROWS * w, end = Math.min(h, (band + 1) * BAND_ROWS) * w; i < end; i++) {
+                int argb = src[i];
+                int a = argb >>> 24;
+                if (hasAlpha && a <= PreprocessUtil.TRANSPARENT_ALPHA) {
+                    dst[i] = 0;
+                    continue;
+                }
+                int color = colors[lut[Rgb555Histogram.cell(argb)] & 0xFFFF];
+                dst[i] = hasAlpha ? a << 24 | color : color;
+            }
+        });
+        return out;
+    }
+}
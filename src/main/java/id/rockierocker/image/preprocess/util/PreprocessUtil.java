@@ -3,9 +3,30 @@ package id.rockierocker.image.preprocess.util;
 import id.rockierocker.image.preprocess.model.Color;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.util.List;
 
 public class PreprocessUtil {
+
+    /* quantizers treat alpha <= this as transparent: skipped when building the palette, written as 0 */
+    public static final int TRANSPARENT_ALPHA = 8;
+
+    /* ARGB pixels, straight from the data buffer for unshared INT_ARGB / INT_RGB rasters (shared, do not modify) */
+    public static int[] readPixels(BufferedImage img) {
+        int w = img.getWidth();
+        int h = img.getHeight();
+        int type = img.getType();
+        if (img.getRaster().getParent() == null
+                && (type == BufferedImage.TYPE_INT_ARGB || type == BufferedImage.TYPE_INT_RGB)) {
+            int[] data = ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+            if (type == BufferedImage.TYPE_INT_ARGB) return data;
+            int[] pixels = new int[data.length];
+            for (int i = 0; i < data.length; i++) pixels[i] = data[i] | 0xFF000000;
+            return pixels;
+        }
+        return img.getRGB(0, 0, w, h, null, 0, w);
+    }
+
     public static int nearestCentroid(Color p, List<Color> centroids) {
         float min = Float.MAX_VALUE;
         int idx = 0;
@@ -30,16 +51,4 @@ public class PreprocessUtil {
         return Math.max(0, Math.min(255, v));
     }
 
-    public static int applyKernel(BufferedImage img, int x, int y, int shift, List<List<Float>> sharpenKernel) {
-        float sum = 0;
-        for (int ky = -1; ky <= 1; ky++) {
-            for (int kx = -1; kx <= 1; kx++) {
-                int rgb = img.getRGB(x + kx, y + ky);
-                int v = (rgb >> shift) & 0xff;
-                sum += v * sharpenKernel.get(ky + 1).get(kx + 1);
-            }
-        }
-        return clamp((int) sum);
-    }
-
 }
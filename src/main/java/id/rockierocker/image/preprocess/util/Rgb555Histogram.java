@@ -0,0 +1,73 @@
+package id.rockierocker.image.preprocess.util;
+
+/**
+ * Pixel counts and channel sums of the opaque pixels per 5-5-5 RGB cell, built in one pass.
+ * A cell index is {@code r >> 3 << 10 | g >> 3 << 5 | b >> 3}, the channels kept apart. It is not an
+ * octree node index: octree levels take one bit of each channel in turn, so {@code OctreeQuantization}
+ * interleaves the bits of a cell to find its node.
+ */
+public class Rgb555Histogram {
+
+    public static final int CELLS = 1 << 15;
+
+    public final int[] count = new int[CELLS];
+    public final long[] sumR = new long[CELLS];
+    public final long[] sumG = new long[CELLS];
+    public final long[] sumB = new long[CELLS];
+
+    public static Rgb555Histogram of(int[] pixels, boolean hasAlpha) {
+        Rgb555Histogram histogram = new Rgb555Histogram();
+        // runs of the same pixel are common in flat artwork and upscaled images, add them at once
+        int last = 0, run = 0;
+        for (int p : pixels) {
+            if (hasAlpha && p >>> 24 <= PreprocessUtil.TRANSPARENT_ALPHA) continue;
+            if (run > 0 && p == last) {
+                run++;
+                continue;
+            }
+            histogram.add(last, run);
+            last = p;
+            run = 1;
+        }
+        histogram.add(last, run);
+        return histogram;
+    }
+
+    private void add(int p, int n) {
+        if (n == 0) return;
+        int cell = cell(p);
+        count[cell] += n;
+        sumR[cell] += (long) ((p >> 16) & 0xFF) * n;
+        sumG[cell] += (long) ((p >> 8) & 0xFF) * n;
+        sumB[cell] += (long) (p & 0xFF) * n;
+    }
+
+    public static int cell(int argb) {
+        return (argb >> 9 & 0x7C00) | (argb >> 6 & 0x3E0) | (argb >> 3 & 0x1F);
+    }
+
+    /* non-empty cells in index order */
+    public int[] cells() {
+        int n = 0;
+        for (int c : count) if (c > 0) n++;
+        int[] cells = new int[n];
+        for (int cell = 0, i = 0; cell < CELLS; cell++) {
+            if (count[cell] > 0) cells[i++] = cell;
+        }
+        return cells;
+    }
+
+    /* mean color (0x00RRGGBB) of the pixels in the given cells */
+    public int mean(int[] cells, int from, int to) {
+        long n = 0, r = 0, g = 0, b = 0;
+        for (int i = from; i < to; i++) {
+            int cell = cells[i];
+            n += count[cell];
+            r += sumR[cell];
+            g += sumG[cell];
+            b += sumB[cell];
+        }
+        if (n == 0) return 0;
+        return (int) ((r + n / 2) / n) << 16 | (int) ((g + n / 2) / n) << 8 | (int) ((b + n / 2) / n);
+    }
+}
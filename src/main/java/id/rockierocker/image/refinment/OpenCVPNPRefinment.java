@@ -1,9 +1,12 @@
 package id.rockierocker.image.refinment;
 
+import id.rockierocker.image.util.NativeImageBuffer;
 import nu.pattern.OpenCV;
 import org.opencv.core.Core;
 import org.opencv.core.CvType;
 import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
 import org.opencv.core.Size;
 import org.opencv.imgproc.Imgproc;
 
@@ -18,40 +21,67 @@ public class OpenCVPNPRefinment {
     // Public API
     // =========================
 
+    public static final String MODE_FULL = "full";
+    public static final String MODE_EDGE_BAND = "edge-band";
+
+    private static final int BAND_TILE = 64;
+    private static final int GUIDED_RADIUS = 4;
+    private static final double GUIDED_EPS = 1e-3;
+
     /**
-     * Refine ONNX mask (float 0..1) and apply as alpha to source image.
+     * Refine ONNX mask and apply as alpha to source image. The mask is either CV_32FC1 (0..1)
+     * or CV_8UC1 (0..255), at any resolution. Resize and every refinement step run natively on the Mat.
+     * The alpha is written into the source buffer's alpha channel before it is copied out.
      */
     public BufferedImage refineAndApply(
-            BufferedImage src,
-            float[][] rawMask
+            NativeImageBuffer src,
+            Mat modelMask
     ) {
-        Mat mask = maskToMat(rawMask);
+        return refineAndApply(src, modelMask, MODE_FULL, 6);
+    }
 
-        gaussianBlur(mask, 5);
-        morphologyClose(mask, 1);
-        featherAlpha(mask, 1.2);
+    /**
+     * Refine with the given mode. {@link #MODE_FULL} blurs, closes and feathers the whole mask;
+     * {@link #MODE_EDGE_BAND} only refines an unknown band of {@code bandRadius} px around the
+     * 0.5 iso-contour with a guided filter (source image as guide) and leaves definite
+     * foreground/background untouched. A negative {@code bandRadius} is rejected.
+     */
+    public BufferedImage refineAndApply(
+            NativeImageBuffer src,
+            Mat modelMask,
+            String mode,
+            int bandRadius
+    ) {
+        if (MODE_EDGE_BAND.equalsIgnoreCase(mode) && bandRadius < 0)
+            throw new IllegalArgumentException("refinementBandRadius must be >= 0, got " + bandRadius);
+        Mat mask = toAlphaMat(modelMask, src.width(), src.height());
+        try {
+            if (MODE_EDGE_BAND.equalsIgnoreCase(mode)) {
+                edgeBandRefine(src, mask, bandRadius, 1.2);
+            } else {
+                gaussianBlur(mask, 5);
+                morphologyClose(mask, 1);
+                featherAlpha(mask, 1.2);
+            }
 
-        return applyMask(src, mask);
+            src.setAlpha(mask);
+            return src.toBufferedImage();
+        } finally {
+            mask.release();
+        }
     }
 
     // =========================
     // Refinement Steps
     // =========================
 
-    /** Convert float mask (0..1) to CV_8UC1 */
-    private Mat maskToMat(float[][] mask) {
-        int h = mask.length;
-        int w = mask[0].length;
-
-        Mat mat = new Mat(h, w, CvType.CV_8UC1);
-        byte[] row = new byte[w];
-
-        for (int y = 0; y < h; y++) {
-            for (int x = 0; x < w; x++) {
-                int v = Math.round(mask[y][x] * 255f);
-                row[x] = (byte) Math.max(0, Math.min(255, v));
-            }
-            mat.put(y, 0, row);
+    /** Convert float mask (0..1) to CV_8UC1 and resize it to the source size */
+    private Mat toAlphaMat(Mat modelMask, int w, int h) {
+        Mat mat = new Mat();
+        if (modelMask.type() == CvType.CV_8UC1) modelMask.copyTo(mat);
+        else modelMask.convertTo(mat, CvType.CV_8UC1, 255.0);
+        if (mat.cols() != w || mat.rows() != h) {
+            Imgproc.resize(mat, mat, new Size(w, h), 0, 0, Imgproc.INTER_LINEAR);
         }
         return mat;
     }
@@ -81,40 +111,145 @@ public class OpenCVPNPRefinment {
         );
     }
 
-    /** Feather alpha using power curve */
+    /** Feather alpha using power curve, applied through a 256 entry lookup table */
     private void featherAlpha(Mat mask, double power) {
-        mask.convertTo(mask, CvType.CV_32F, 1.0 / 255.0);
-        Core.pow(mask, power, mask);
-        mask.convertTo(mask, CvType.CV_8UC1, 255.0);
+        Mat lut = featherLut(power);
+        Core.LUT(mask, lut, mask);
+        lut.release();
     }
 
-    // =========================
-    // Apply Mask
-    // =========================
-
-    private BufferedImage applyMask(BufferedImage src, Mat mask) {
-        int w = src.getWidth();
-        int h = src.getHeight();
-
-        BufferedImage out =
-                new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
-
-        byte[] alpha = new byte[w * h];
-        mask.get(0, 0, alpha);
-
-        int i = 0;
-        for (int y = 0; y < h; y++) {
-            for (int x = 0; x < w; x++) {
-                int rgb = src.getRGB(x, y);
-                int a = alpha[i++] & 0xFF;
-
-                int rgba =
-                        (a << 24) |
-                                (rgb & 0x00FFFFFF);
+    private Mat featherLut(double power) {
+        Mat lut = new Mat(1, 256, CvType.CV_8UC1);
+        byte[] table = new byte[256];
+        for (int v = 0; v < 256; v++) {
+            table[v] = (byte) Math.round(Math.pow(v / 255.0, power) * 255.0);
+        }
+        lut.put(0, 0, table);
+        return lut;
+    }
 
-                out.setRGB(x, y, rgba);
+    /**
+     * Trimap refinement: the unknown band is dilate(fg) - erode(fg). Only tiles that touch the
+     * band are guided-filtered, and only band pixels are written back.
+     */
+    private void edgeBandRefine(NativeImageBuffer src, Mat alpha, int bandRadius, double power) {
+        int w = alpha.cols();
+        int h = alpha.rows();
+
+        Mat fg = new Mat();
+        Mat dilated = new Mat();
+        Mat eroded = new Mat();
+        Mat band = new Mat();
+        // tiles read the unrefined alpha, so a tile's margin never sees its neighbour's output
+        Mat original = alpha.clone();
+        Mat kernel = Imgproc.getStructuringElement(
+                Imgproc.MORPH_ELLIPSE,
+                new Size(2 * bandRadius + 1, 2 * bandRadius + 1)
+        );
+        Mat lut = featherLut(power);
+        try {
+            Imgproc.threshold(alpha, fg, 127, 255, Imgproc.THRESH_BINARY);
+            Imgproc.dilate(fg, dilated, kernel);
+            Imgproc.erode(fg, eroded, kernel);
+            Core.subtract(dilated, eroded, band);
+
+            for (int ty = 0; ty < h; ty += BAND_TILE) {
+                for (int tx = 0; tx < w; tx += BAND_TILE) {
+                    Rect tile = new Rect(tx, ty, Math.min(BAND_TILE, w - tx), Math.min(BAND_TILE, h - ty));
+                    Mat bandTile = band.submat(tile);
+                    if (Core.countNonZero(bandTile) > 0) {
+                        refineTile(src, original, alpha, bandTile, tile, lut);
+                    }
+                    bandTile.release();
+                }
             }
+        } finally {
+            fg.release();
+            dilated.release();
+            eroded.release();
+            band.release();
+            original.release();
+            kernel.release();
+            lut.release();
+        }
+    }
+
+    /*
+     * Guided filter (He et al.) over the tile plus a margin, written back where the band is set. The
+     * filter stacks two box filters of radius r (the a/b coefficients are averaged again), so the margin
+     * is 2r: every tile pixel then sees the same windows as a whole-image filter and tiles do not seam.
+     */
+    private void refineTile(NativeImageBuffer src, Mat original, Mat alpha, Mat bandTile, Rect tile, Mat lut) {
+        int margin = 2 * GUIDED_RADIUS;
+        int x0 = Math.max(0, tile.x - margin);
+        int y0 = Math.max(0, tile.y - margin);
+        int x1 = Math.min(alpha.cols(), tile.x + tile.width + margin);
+        int y1 = Math.min(alpha.rows(), tile.y + tile.height + margin);
+        Rect area = new Rect(x0, y0, x1 - x0, y1 - y0);
+
+        Mat guide = grayGuide(src, area);
+        Mat p = new Mat();
+        Mat originalArea = original.submat(area);
+        originalArea.convertTo(p, CvType.CV_32F, 1.0 / 255.0);
+        originalArea.release();
+        Size box = new Size(2 * GUIDED_RADIUS + 1, 2 * GUIDED_RADIUS + 1);
+
+        Mat meanI = new Mat(), meanP = new Mat(), corrII = new Mat(), corrIP = new Mat();
+        Mat tmp = new Mat(), a = new Mat(), b = new Mat(), q = new Mat();
+        try {
+            Imgproc.boxFilter(guide, meanI, -1, box);
+            Imgproc.boxFilter(p, meanP, -1, box);
+            Core.multiply(guide, guide, tmp);
+            Imgproc.boxFilter(tmp, corrII, -1, box);
+            Core.multiply(guide, p, tmp);
+            Imgproc.boxFilter(tmp, corrIP, -1, box);
+
+            // a = (corrIP - meanI * meanP) / (corrII - meanI^2 + eps), b = meanP - a * meanI
+            Core.multiply(meanI, meanP, tmp);
+            Core.subtract(corrIP, tmp, corrIP);
+            Core.multiply(meanI, meanI, tmp);
+            Core.subtract(corrII, tmp, corrII);
+            Core.add(corrII, new Scalar(GUIDED_EPS), corrII);
+            Core.divide(corrIP, corrII, a);
+            Core.multiply(a, meanI, tmp);
+            Core.subtract(meanP, tmp, b);
+
+            Imgproc.boxFilter(a, a, -1, box);
+            Imgproc.boxFilter(b, b, -1, box);
+            Core.multiply(a, guide, q);
+            Core.add(q, b, q);
+
+            Mat refined = new Mat();
+            q.submat(new Rect(tile.x - x0, tile.y - y0, tile.width, tile.height))
+                    .convertTo(refined, CvType.CV_8UC1, 255.0);
+            Core.LUT(refined, lut, refined);
+            Mat alphaTile = alpha.submat(tile);
+            refined.copyTo(alphaTile, bandTile);
+            alphaTile.release();
+            refined.release();
+        } finally {
+            guide.release();
+            p.release();
+            meanI.release();
+            meanP.release();
+            corrII.release();
+            corrIP.release();
+            tmp.release();
+            a.release();
+            b.release();
+            q.release();
         }
-        return out;
+    }
+
+    /** Luma of the source region as CV_32F in 0..1, converted natively from the shared buffer */
+    private Mat grayGuide(NativeImageBuffer src, Rect area) {
+        Mat region = src.mat().submat(area);
+        Mat gray = new Mat();
+        Mat guide = new Mat();
+        Imgproc.cvtColor(region, gray, Imgproc.COLOR_BGRA2GRAY);
+        gray.convertTo(guide, CvType.CV_32F, 1.0 / 255.0);
+        region.release();
+        gray.release();
+        return guide;
     }
 }
@@ -1,37 +1,67 @@
 package id.rockierocker.image.rembg;
 
+import id.rockierocker.image.analysis.BackgroundColor;
+import id.rockierocker.image.analysis.BackgroundColorDetector;
 import lombok.extern.slf4j.Slf4j;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.util.Map;
 import java.util.Objects;
 
+/**
+ * Removes a solid background color.
+ * <p>
+ * Every pixel is mapped to an alpha through a lookup table over 6-bit-per-channel quantized RGB,
+ * built once per request from the target color: similarity at or above {@code hexSimilarityThreshold}
+ * is fully transparent, the {@code hexSoftness} band below it fades to opaque for an anti-aliased edge.
+ * With {@code hexBorderConnected} (default) only background reachable from the image border is
+ * removed (scanline flood fill), so enclosed regions of the same color (white eyes, teeth) are kept.
+ * Without {@code hexColorToRemove} the color is detected from the border by {@link BackgroundColorDetector}
+ * and used when its confidence reaches {@code hexAutoMinConfidence}.
+ */
 @Slf4j
 public class ByHexCodeRembg implements Rembg {
 
     private Map<String, Object> configMap;
     private final String hexColorKey = "hexColorToRemove";
 
+    private static final int QUANT_BITS = 6;
+    private static final int QUANT_SHIFT = 8 - QUANT_BITS;
+    private static final double MAX_DISTANCE = Math.sqrt(255 * 255 * 3);
+
+    /* Share of border samples the detected color must cover to be trusted */
+    public static final double AUTO_MIN_CONFIDENCE = 0.6;
+
     @Override
     public BufferedImage removeBackground(BufferedImage inputImage) throws Exception {
         log.info("ByHexColorRembg removeBackground called");
         if (Objects.isNull(configMap))
             throw new IllegalAccessException("ByHexColorRembg not configured yet");
         String hexColor = (String) configMap.get(hexColorKey);
-        if (Objects.isNull(hexColor))
-            throw new IllegalArgumentException("Hex color to remove not configured");
+        if (Objects.isNull(hexColor)) {
+            BackgroundColor detected = BackgroundColorDetector.detect(inputImage);
+            log.info("detected background {}", detected);
+            if (!detected.isConfident(ConfigUtil.getDouble(configMap, "hexAutoMinConfidence", AUTO_MIN_CONFIDENCE)))
+                throw new IllegalArgumentException("Hex color to remove not configured and no solid background detected");
+            hexColor = detected.getHex();
+        }
 
+        long start = System.currentTimeMillis();
         BufferedImage bufferedImage = removeBackgroundByHex(
                 inputImage,
                 hexColor,
-                0.98  // threshold for color similarity
+                ConfigUtil.getDouble(configMap, "hexSimilarityThreshold", 0.98),
+                ConfigUtil.getDouble(configMap, "hexSoftness", 0.04),
+                ConfigUtil.getBoolean(configMap, "hexBorderConnected", true)
         );
+        log.info("removed background {} in {} ms", hexColor, System.currentTimeMillis() - start);
         return bufferedImage;
     }
 
     @Override
     public String getName() {
-        return "";
+        return "ByHexCodeRembg";
     }
 
     @Override
@@ -52,47 +82,137 @@ public class ByHexCodeRembg implements Rembg {
             BufferedImage input,
             String bgHex,
             double threshold
+    ) {
+        return removeBackgroundByHex(input, bgHex, threshold, 0, false);
+    }
+
+    public static BufferedImage removeBackgroundByHex(
+            BufferedImage input,
+            String bgHex,
+            double threshold,
+            double softness,
+            boolean borderConnected
     ) {
         int width = input.getWidth();
         int height = input.getHeight();
 
+        // bulk read straight into the output raster, alpha is patched in place
         BufferedImage output =
                 new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        int[] pixels = ((DataBufferInt) output.getRaster().getDataBuffer()).getData();
+        input.getRGB(0, 0, width, height, pixels, 0, width);
+
+        byte[] lut = alphaLut(hexToRgb(bgHex), threshold, softness);
+        if (borderConnected) {
+            floodFromBorder(pixels, width, height, lut);
+        } else {
+            for (int i = 0; i < pixels.length; i++) {
+                pixels[i] = withAlpha(pixels[i], lut[quantize(pixels[i])] & 0xFF);
+            }
+        }
+        return output;
+    }
 
-        int[] bg = hexToRgb(bgHex);
-        float[] hsvBg = rgbToHsv(bg[0], bg[1], bg[2]);
-
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
+    /**
+     * Alpha for every quantized color (bucket center): 0 at or above the threshold, 255 below
+     * {@code threshold - softness}, linear in between.
+     */
+    static byte[] alphaLut(int[] bg, double threshold, double softness) {
+        int levels = 1 << QUANT_BITS;
+        int half = (1 << QUANT_SHIFT) >> 1;
+        byte[] lut = new byte[levels * levels * levels];
+        double soft = Math.max(softness, 1e-9);
+        for (int r = 0; r < levels; r++) {
+            for (int g = 0; g < levels; g++) {
+                for (int b = 0; b < levels; b++) {
+                    double similarity = colorSimilarity(
+                            (r << QUANT_SHIFT) + half, (g << QUANT_SHIFT) + half, (b << QUANT_SHIFT) + half,
+                            bg[0], bg[1], bg[2]);
+                    double keep = Math.min(1.0, Math.max(0.0, (threshold - similarity) / soft));
+                    lut[(r << (2 * QUANT_BITS)) | (g << QUANT_BITS) | b] = (byte) Math.round(keep * 255);
+                }
+            }
+        }
+        return lut;
+    }
 
-                int pixel = input.getRGB(x, y);
+    /*
+     * Scanline flood fill from every border pixel through pixels the LUT does not keep fully opaque.
+     * Reached pixels take their LUT alpha; unreached ones keep their own alpha.
+     */
+    private static void floodFromBorder(int[] pixels, int width, int height, byte[] lut) {
+        byte[] visited = new byte[pixels.length];
+        int[] stack = new int[Math.max(16, 2 * (width + height))];
+        int top = 0;
+
+        for (int x = 0; x < width; x++) {
+            stack = push(stack, top++, x);
+            stack = push(stack, top++, (height - 1) * width + x);
+        }
+        for (int y = 1; y < height - 1; y++) {
+            stack = push(stack, top++, y * width);
+            stack = push(stack, top++, y * width + width - 1);
+        }
 
-                int a = (pixel >> 24) & 0xff;
-                int r = (pixel >> 16) & 0xff;
-                int g = (pixel >> 8) & 0xff;
-                int b = pixel & 0xff;
+        while (top > 0) {
+            int seed = stack[--top];
+            if (visited[seed] != 0 || isOpaque(pixels[seed], lut)) continue;
+            int y = seed / width;
+            int row = y * width;
+
+            // extend the span left and right from the seed
+            int left = seed - row;
+            while (left > 0 && visited[row + left - 1] == 0 && !isOpaque(pixels[row + left - 1], lut)) left--;
+            int right = seed - row;
+            while (right < width - 1 && visited[row + right + 1] == 0 && !isOpaque(pixels[row + right + 1], lut)) right++;
+
+            for (int x = left; x <= right; x++) {
+                int i = row + x;
+                visited[i] = 1;
+                pixels[i] = withAlpha(pixels[i], lut[quantize(pixels[i])] & 0xFF);
+            }
 
-                float[] hsv = rgbToHsv(r, g, b);
+            // one seed per run of fillable pixels in the rows above and below
+            for (int ny = y - 1; ny <= y + 1; ny += 2) {
+                if (ny < 0 || ny >= height) continue;
+                int nrow = ny * width;
+                boolean inRun = false;
+                for (int x = left; x <= right; x++) {
+                    int i = nrow + x;
+                    boolean fillable = visited[i] == 0 && !isOpaque(pixels[i], lut);
+                    if (fillable && !inRun) stack = push(stack, top++, i);
+                    inRun = fillable;
+                }
+            }
+        }
+    }
 
-                double similarity = colorSimilarity(
-                        hsv[0], hsv[1], hsv[2],
-                        hsvBg[0], hsvBg[1], hsvBg[2]
-                );
+    private static int[] push(int[] stack, int top, int value) {
+        if (top == stack.length) {
+            int[] grown = new int[stack.length * 2];
+            System.arraycopy(stack, 0, grown, 0, stack.length);
+            stack = grown;
+        }
+        stack[top] = value;
+        return stack;
+    }
 
+    /* Fully transparent pixels never block the fill */
+    private static boolean isOpaque(int argb, byte[] lut) {
+        return (argb >>> 24) != 0 && lut[quantize(argb)] == (byte) 255;
+    }
 
-                if (similarity >= 0.6)
-                    log.info("Pixel at ({}, {}) - Similarity: {}", x, y, similarity);
+    private static int quantize(int argb) {
+        int r = (argb >> (16 + QUANT_SHIFT)) & ((1 << QUANT_BITS) - 1);
+        int g = (argb >> (8 + QUANT_SHIFT)) & ((1 << QUANT_BITS) - 1);
+        int b = (argb >> QUANT_SHIFT) & ((1 << QUANT_BITS) - 1);
+        return (r << (2 * QUANT_BITS)) | (g << QUANT_BITS) | b;
+    }
 
-                if (similarity >= threshold) {
-                    // make transparent
-                    output.setRGB(x, y, 0x00000000);
-                    System.out.println("Making pixel transparent at (" + x + ", " + y + ") with similarity: " + similarity);
-                } else {
-                    output.setRGB(x, y, (a << 24) | (r << 16) | (g << 8) | b);
-                }
-            }
-        }
-        return output;
+    /* Never raise the pixel's own alpha */
+    private static int withAlpha(int argb, int alpha) {
+        int a = Math.min(argb >>> 24, alpha);
+        return (a << 24) | (argb & 0x00FFFFFF);
     }
 
     static double colorSimilarity(int r1, int g1, int b1,
@@ -102,50 +222,6 @@ public class ByHexCodeRembg implements Rembg {
                         Math.pow(g1 - g2, 2) +
                         Math.pow(b1 - b2, 2)
         );
-        double maxDistance = Math.sqrt(255 * 255 * 3);
-        return 1.0 - (distance / maxDistance);
-    }
-
-    static float colorSimilarity(float r1, float g1, float b1,
-                                 float r2, float g2, float b2) {
-
-        float dr = r1 - r2;
-        float dg = g1 - g2;
-        float db = b1 - b2;
-
-        float distance = (float) Math.sqrt(
-                dr * dr +
-                        dg * dg +
-                        db * db
-        );
-
-        float maxDistance = (float) Math.sqrt(255f * 255f * 3f);
-
-        return 1.0f - (distance / maxDistance);
-    }
-
-
-    static float[] rgbToHsv(int r, int g, int b) {
-        float rf = r / 255f;
-        float gf = g / 255f;
-        float bf = b / 255f;
-
-        float max = Math.max(rf, Math.max(gf, bf));
-        float min = Math.min(rf, Math.min(gf, bf));
-        float delta = max - min;
-
-        float h;
-        if (delta == 0) h = 0;
-        else if (max == rf) h = 60 * (((gf - bf) / delta) % 6);
-        else if (max == gf) h = 60 * (((bf - rf) / delta) + 2);
-        else h = 60 * (((rf - gf) / delta) + 4);
-
-        if (h < 0) h += 360;
-
-        float s = (max == 0) ? 0 : delta / max;
-        float v = max;
-
-        return new float[]{h, s, v};
+        return 1.0 - (distance / MAX_DISTANCE);
     }
-
 }
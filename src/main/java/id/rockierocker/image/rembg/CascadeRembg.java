@@ -0,0 +1,147 @@
+package id.rockierocker.image.rembg;
+
+import id.rockierocker.image.analysis.BackgroundColor;
+import id.rockierocker.image.analysis.BackgroundColorDetector;
+import id.rockierocker.image.analysis.ImageAnalyzer;
+import id.rockierocker.image.analysis.ImageStats;
+import lombok.extern.slf4j.Slf4j;
+
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Runs a cheap engine first and only falls back to ONNX when its result looks wrong.
+ * <p>
+ * Uniform backgrounds (same border signals as {@link OpenCVRembg} auto mode and
+ * {@code ImageUtil.borderColorVariance}, taken from {@link ImageStats}) are handed to {@link ByHexCodeRembg}
+ * when {@code hexColorToRemove} is configured or {@link BackgroundColorDetector} finds a solid
+ * border color, otherwise to {@link OpenCVRembg} with the threshold method. The resulting alpha is scored on foreground ratio and edge coherence;
+ * below {@code cascadeScoreThreshold} the image goes through {@link OnnxRembg} with the same config map.
+ */
+@Slf4j
+public class CascadeRembg implements Rembg {
+
+    private Map<String, Object> config;
+
+    @Override
+    public BufferedImage removeBackground(BufferedImage inputImage) throws Exception {
+        if (Objects.isNull(config))
+            throw new IllegalAccessException("Cascade Rembg not configured yet");
+
+        ImageStats stats = ImageAnalyzer.analyze(inputImage);
+        double uniformity = stats.getBorderUniformity();
+        double borderVariance = stats.getBorderColorVariance();
+        log.info("cascade: background uniformity={} border variance={}", uniformity, borderVariance);
+
+        if (uniformity >= ConfigUtil.getDouble(config, "cascadeUniformityThreshold", 0.85)
+                && borderVariance <= ConfigUtil.getDouble(config, "cascadeBorderVarianceThreshold", 10)) {
+            BufferedImage result = tryCheapEngine(inputImage);
+            if (Objects.nonNull(result)) return result;
+        }
+
+        // the engine is shared between requests, so the engine used is logged per call rather than kept
+        OnnxRembg onnxRembg = new OnnxRembg();
+        onnxRembg.configMap(config);
+        log.info("cascade: engine used {}", onnxRembg.getName());
+        return onnxRembg.removeBackground(inputImage);
+    }
+
+    /* result of the cheap engine when it scores high enough, null to fall through to ONNX */
+    private BufferedImage tryCheapEngine(BufferedImage inputImage) {
+        Rembg cheap = cheapEngine(inputImage);
+        long start = System.currentTimeMillis();
+        BufferedImage result;
+        try {
+            result = cheap.removeBackground(inputImage);
+        } catch (Exception e) {
+            log.warn("cascade: {} failed, falling back to ONNX", cheap.getName(), e);
+            return null;
+        }
+        double score = Objects.isNull(result) ? 0 : scoreAlpha(result);
+        log.info("cascade: {} finished in {} ms with score {}", cheap.getName(), System.currentTimeMillis() - start, score);
+        if (score < ConfigUtil.getDouble(config, "cascadeScoreThreshold", 0.7)) return null;
+        log.info("cascade: engine used {}", cheap.getName());
+        return result;
+    }
+
+    @Override
+    public String getName() {
+        return "CascadeRembg";
+    }
+
+    @Override
+    public void configMap(Map<String, Object> config) {
+        this.config = config;
+    }
+
+    private Rembg cheapEngine(BufferedImage inputImage) {
+        if (Objects.nonNull(config.get("hexColorToRemove"))) {
+            Rembg byHex = new ByHexCodeRembg();
+            byHex.configMap(config);
+            return byHex;
+        }
+        BackgroundColor background = BackgroundColorDetector.detect(inputImage);
+        if (background.isConfident(ConfigUtil.getDouble(config, "hexAutoMinConfidence", ByHexCodeRembg.AUTO_MIN_CONFIDENCE))) {
+            log.info("cascade: detected solid background {} (confidence {})", background.getHex(), background.getConfidence());
+            Map<String, Object> byHexConfig = new HashMap<>(config);
+            byHexConfig.put("hexColorToRemove", background.getHex());
+            Rembg byHex = new ByHexCodeRembg();
+            byHex.configMap(byHexConfig);
+            return byHex;
+        }
+        Map<String, Object> openCvConfig = new HashMap<>(config);
+        openCvConfig.put("method", "threshold");
+        Rembg openCv = new OpenCVRembg();
+        openCv.configMap(openCvConfig);
+        return openCv;
+    }
+
+    /**
+     * Score a cutout from 0 to 1. The foreground ratio must be plausible for a sticker, and the
+     * boundary should be short relative to the foreground area: ragged or speckled masks have
+     * far more boundary pixels than a compact shape of the same area.
+     */
+    double scoreAlpha(BufferedImage image) {
+        int w = image.getWidth();
+        int h = image.getHeight();
+        int[] prev = new int[w];
+        int[] curr = new int[w];
+        int[] next = new int[w];
+        image.getRGB(0, 0, w, 1, curr, 0, w);
+
+        long foreground = 0;
+        long boundary = 0;
+        for (int y = 0; y < h; y++) {
+            if (y + 1 < h) image.getRGB(0, y + 1, w, 1, next, 0, w);
+            for (int x = 0; x < w; x++) {
+                if (!opaque(curr[x])) continue;
+                foreground++;
+                boolean edge = x == 0 || x == w - 1 || y == 0 || y == h - 1
+                        || !opaque(curr[x - 1]) || !opaque(curr[x + 1])
+                        || !opaque(prev[x]) || !opaque(next[x]);
+                if (edge) boundary++;
+            }
+            int[] tmp = prev;
+            prev = curr;
+            curr = next;
+            next = tmp;
+        }
+
+        double foregroundRatio = foreground / (double) ((long) w * h);
+        if (foregroundRatio < ConfigUtil.getDouble(config, "cascadeMinForegroundRatio", 0.02)
+                || foregroundRatio > ConfigUtil.getDouble(config, "cascadeMaxForegroundRatio", 0.95)) {
+            log.info("cascade: implausible foreground ratio {}", foregroundRatio);
+            return 0;
+        }
+
+        // allow up to 4x the perimeter of a circle with the same area before penalizing
+        double compactPerimeter = 2 * Math.sqrt(Math.PI * foreground);
+        return Math.min(1.0, 4 * compactPerimeter / Math.max(1, boundary));
+    }
+
+    private static boolean opaque(int argb) {
+        return (argb >>> 24) > 127;
+    }
+}
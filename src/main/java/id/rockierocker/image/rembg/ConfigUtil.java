@@ -0,0 +1,36 @@
+package id.rockierocker.image.rembg;
+
+import java.util.Map;
+
+/**
+ * Typed reads from a rembg config map (the {@code rembg_config.config} JSONB). JSON numbers arrive
+ * as any {@link Number}, hand-edited configs often hold strings, so both are accepted; a missing
+ * key gives the default.
+ */
+public class ConfigUtil {
+
+    public static double getDouble(Map<String, Object> config, String key, double defaultValue) {
+        Object value = config.get(key);
+        if (value == null) return defaultValue;
+        if (value instanceof Number number) return number.doubleValue();
+        return Double.parseDouble(value.toString().trim());
+    }
+
+    public static int getInt(Map<String, Object> config, String key, int defaultValue) {
+        Object value = config.get(key);
+        if (value == null) return defaultValue;
+        if (value instanceof Number number) return number.intValue();
+        return Integer.parseInt(value.toString().trim());
+    }
+
+    public static boolean getBoolean(Map<String, Object> config, String key, boolean defaultValue) {
+        Object value = config.get(key);
+        if (value == null) return defaultValue;
+        return Boolean.parseBoolean(value.toString().trim());
+    }
+
+    public static String getString(Map<String, Object> config, String key, String defaultValue) {
+        Object value = config.get(key);
+        return value == null ? defaultValue : value.toString();
+    }
+}
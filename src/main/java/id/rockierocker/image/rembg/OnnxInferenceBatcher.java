@@ -0,0 +1,183 @@
+package id.rockierocker.image.rembg;
+
+import ai.onnxruntime.OnnxJavaType;
+import ai.onnxruntime.OnnxTensor;
+import ai.onnxruntime.OrtEnvironment;
+import ai.onnxruntime.OrtSession;
+import lombok.extern.slf4j.Slf4j;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Groups concurrent single-image inferences for the same model and input size into one
+ * {@code [N,3,H,W]} run.
+ * <p>
+ * The first request of a batch becomes its leader: it waits up to the batching window (or
+ * until the batch is full), runs the whole batch on the calling thread and hands every
+ * caller its own {@code H x W} mask. A leader with no other request in flight for the same
+ * key runs at once, so sequential traffic never pays the window. Only use this for models
+ * with a dynamic batch dimension.
+ */
+@Slf4j
+public class OnnxInferenceBatcher {
+
+    private static final Object lock = new Object();
+    private static final Map<String, Batch> collecting = new HashMap<>();
+    /* callers currently inside infer() per batch key */
+    private static final Map<String, Integer> active = new HashMap<>();
+
+    /**
+     * Run inference for one normalized CHW image, possibly batched with concurrent callers.
+     *
+     * @param session  session of the model to run
+     * @param sessionKey {@link OnnxSession#key} of the session; requests are batched per session and input size
+     * @param input    normalized image tensor data of length 3*H*W, read from index 0
+     * @param W        input width
+     * @param H        input height
+     * @param windowMs how long the leader waits for more requests
+     * @param maxBatch maximum number of images per run
+     * @return H x W CV_32FC1 mask for this caller, owned (and released) by the caller
+     */
+    public static Mat infer(
+            OrtSession session,
+            String sessionKey,
+            FloatBuffer input,
+            int W,
+            int H,
+            long windowMs,
+            int maxBatch
+    ) throws Exception {
+        String batchKey = sessionKey + "@" + W + "x" + H;
+        CompletableFuture<Mat> result = new CompletableFuture<>();
+        Batch batch;
+        boolean leader;
+        boolean alone;
+        synchronized (lock) {
+            alone = active.merge(batchKey, 1, Integer::sum) == 1;
+            batch = collecting.get(batchKey);
+            leader = batch == null;
+            if (leader) {
+                batch = new Batch();
+                collecting.put(batchKey, batch);
+            }
+            batch.inputs.add(input);
+            batch.results.add(result);
+            if (batch.inputs.size() >= maxBatch) {
+                collecting.remove(batchKey, batch);
+                batch.full.countDown();
+            }
+        }
+
+        try {
+            if (leader) {
+                try {
+                    // nobody else is in flight for this key, so waiting could only add latency
+                    if (!alone) batch.full.await(windowMs, TimeUnit.MILLISECONDS);
+                    synchronized (lock) {
+                        collecting.remove(batchKey, batch);
+                    }
+                    runBatch(session, sessionKey, batch, W, H);
+                } catch (Throwable t) {
+                    // an interrupted wait must not leave the followers blocked on their futures
+                    synchronized (lock) {
+                        collecting.remove(batchKey, batch);
+                    }
+                    if (t instanceof InterruptedException) Thread.currentThread().interrupt();
+                    fail(batch, t);
+                }
+            }
+
+            try {
+                return result.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Exception cause) throw cause;
+                throw e;
+            }
+        } finally {
+            synchronized (lock) {
+                active.computeIfPresent(batchKey, (key, count) -> count == 1 ? null : count - 1);
+            }
+        }
+    }
+
+    /* completes every future of the batch that has no result yet; no more callers join once it left `collecting` */
+    private static void fail(Batch batch, Throwable cause) {
+        batch.results.forEach(r -> r.completeExceptionally(cause));
+    }
+
+    private static void runBatch(OrtSession session, String sessionKey, Batch batch, int W, int H) {
+        int n = batch.inputs.size();
+        int imageSize = 3 * W * H;
+        log.info("running batched inference for {} image(s) at {}x{}", n, W, H);
+
+        FloatBuffer buffer = OnnxTensorBufferPool.acquire(n * imageSize);
+        try {
+            for (FloatBuffer input : batch.inputs) buffer.put(input.duplicate().position(0).limit(imageSize));
+            buffer.rewind();
+
+            String inputName = session.getInputNames().iterator().next();
+            try (OnnxTensor tensor = OnnxTensor.createTensor(
+                    OrtEnvironment.getEnvironment(),
+                    buffer,
+                    new long[]{n, 3, H, W}
+            ); OrtSession.Result result = n == 1
+                    ? OnnxInputSizeSelector.timedRun(session, sessionKey, Map.of(inputName, tensor), Math.max(W, H))
+                    // a batch takes longer than one image, it must not count as single-image latency
+                    : session.run(Map.of(inputName, tensor))) {
+                Mat[] masks = outputMasksToMats((OnnxTensor) result.get(0));
+                for (int i = 0; i < n; i++) {
+                    batch.results.get(i).complete(masks[i]);
+                }
+            }
+        } catch (Throwable e) {
+            log.error("batched inference failed: {}", e.toString());
+            fail(batch, e);
+        } finally {
+            OnnxTensorBufferPool.release(buffer);
+        }
+    }
+
+    /**
+     * Copy the first channel of every image of an {@code [N,1,H,W]} (or {@code [N,H,W]}) output
+     * tensor into its own CV_32FC1 Mat.
+     * <p>
+     * The runtime hands the output out as a heap buffer, which a Mat cannot wrap; it is read once
+     * per run and each plane goes through one reused float[] into Mat memory.
+     */
+    static Mat[] outputMasksToMats(OnnxTensor output) {
+        if (output.getInfo().type != OnnxJavaType.FLOAT) {
+            throw new IllegalArgumentException("Expected a float mask output, got " + output.getInfo().type);
+        }
+        long[] shape = output.getInfo().getShape();
+        int h = (int) shape[shape.length - 2];
+        int w = (int) shape[shape.length - 1];
+        int perImage = 1;
+        for (int i = 1; i < shape.length; i++) perImage *= (int) shape[i];
+
+        FloatBuffer data = output.getFloatBuffer();
+        float[] plane = new float[h * w];
+        Mat[] masks = new Mat[(int) shape[0]];
+        for (int i = 0; i < masks.length; i++) {
+            data.get(i * perImage, plane);
+            masks[i] = new Mat(h, w, CvType.CV_32FC1);
+            masks[i].put(0, 0, plane);
+        }
+        return masks;
+    }
+
+    private static final class Batch {
+        private final List<FloatBuffer> inputs = new ArrayList<>();
+        private final List<CompletableFuture<Mat>> results = new ArrayList<>();
+        private final CountDownLatch full = new CountDownLatch(1);
+    }
+}
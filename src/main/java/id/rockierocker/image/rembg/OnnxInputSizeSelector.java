@@ -0,0 +1,114 @@
+package id.rockierocker.image.rembg;
+
+import ai.onnxruntime.OnnxTensor;
+import ai.onnxruntime.OrtException;
+import ai.onnxruntime.OrtSession;
+import id.rockierocker.image.rembg.constant.OnnxInputSize;
+import lombok.extern.slf4j.Slf4j;
+
+import java.awt.image.BufferedImage;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Picks the ONNX input size per image for {@link OnnxInputSize#AUTO}.
+ * <p>
+ * The wanted resolution grows with the image's detail (edge density on a coarse sample grid)
+ * but never exceeds the source size, so small emoji are not upscaled and detailed posters are
+ * not squashed. The smallest supported size covering it is chosen, then stepped down while the
+ * observed inference latency of that size exceeds {@code onnxAutoLatencyBudgetMs}.
+ */
+@Slf4j
+public class OnnxInputSizeSelector {
+
+    private static final int SAMPLE_GRID = 128;
+    private static final int EDGE_THRESHOLD = 24;
+
+    /* Exponential moving average of single-image inference latency per session key and input size, in ms */
+    private static final Map<String, Double> latencyEstimates = new ConcurrentHashMap<>();
+
+    /**
+     * @param image      image to pick the input size for
+     * @param config     rembg config
+     * @param sessionKey {@link OnnxSession#key} of the session that will run it, whose latencies the budget uses
+     */
+    public static OnnxInputSize select(BufferedImage image, Map<String, Object> config, String sessionKey) {
+        OnnxInputSize[] sizes = OnnxInputSize.fixedSizes();
+        int smallest = sizes[0].inputSize;
+        int largest = sizes[sizes.length - 1].inputSize;
+
+        double referenceDensity = ConfigUtil.getDouble(config, "onnxAutoEdgeDensityRef", 0.12);
+        double detail = Math.min(1.0, edgeDensity(image) / referenceDensity);
+        int sourceSize = Math.max(image.getWidth(), image.getHeight());
+        double wanted = Math.min(sourceSize, smallest + detail * (largest - smallest));
+
+        int index = sizes.length - 1;
+        for (int i = 0; i < sizes.length; i++) {
+            if (sizes[i].inputSize >= wanted) {
+                index = i;
+                break;
+            }
+        }
+
+        double budgetMs = ConfigUtil.getDouble(config, "onnxAutoLatencyBudgetMs", 0);
+        if (budgetMs > 0) {
+            while (index > 0 && latencyEstimates.getOrDefault(estimateKey(sessionKey, sizes[index].inputSize), 0.0) > budgetMs) index--;
+        }
+
+        log.info("auto input size: source={} detail={} wanted={} -> {}", sourceSize, detail, Math.round(wanted), sizes[index]);
+        return sizes[index];
+    }
+
+    /**
+     * Run a single-image inference and record how long the run itself took for the given
+     * session and input size. Only the run is timed, so batching waits and tensor preparation
+     * do not count against the latency budget.
+     */
+    public static OrtSession.Result timedRun(OrtSession session, String sessionKey, Map<String, OnnxTensor> inputs, int inputSize) throws OrtException {
+        long start = System.currentTimeMillis();
+        OrtSession.Result result = session.run(inputs);
+        recordLatency(sessionKey, inputSize, System.currentTimeMillis() - start);
+        return result;
+    }
+
+    /**
+     * Record an observed single-image inference latency for the given session and input size.
+     * Warmup seeds every size it runs, so the budget applies from the first request.
+     */
+    public static void recordLatency(String sessionKey, int inputSize, long millis) {
+        latencyEstimates.merge(estimateKey(sessionKey, inputSize), (double) millis, (old, now) -> old * 0.8 + now * 0.2);
+    }
+
+    private static String estimateKey(String sessionKey, int inputSize) {
+        return sessionKey + "@" + inputSize;
+    }
+
+    /* Share of sample-grid points whose luminance gradient exceeds EDGE_THRESHOLD */
+    static double edgeDensity(BufferedImage image) {
+        int w = image.getWidth();
+        int h = image.getHeight();
+        int gw = Math.min(SAMPLE_GRID, w);
+        int gh = Math.min(SAMPLE_GRID, h);
+        if (gw < 2 || gh < 2) return 0;
+
+        int[] luma = new int[gw * gh];
+        for (int gy = 0; gy < gh; gy++) {
+            int y = (int) ((long) gy * (h - 1) / (gh - 1));
+            for (int gx = 0; gx < gw; gx++) {
+                int x = (int) ((long) gx * (w - 1) / (gw - 1));
+                int rgb = image.getRGB(x, y);
+                luma[gy * gw + gx] = (((rgb >> 16) & 0xFF) * 77 + ((rgb >> 8) & 0xFF) * 150 + (rgb & 0xFF) * 29) >> 8;
+            }
+        }
+
+        int edges = 0;
+        for (int gy = 0; gy < gh - 1; gy++) {
+            for (int gx = 0; gx < gw - 1; gx++) {
+                int i = gy * gw + gx;
+                int gradient = Math.abs(luma[i] - luma[i + 1]) + Math.abs(luma[i] - luma[i + gw]);
+                if (gradient > EDGE_THRESHOLD) edges++;
+            }
+        }
+        return edges / (double) ((gw - 1) * (gh - 1));
+    }
+}
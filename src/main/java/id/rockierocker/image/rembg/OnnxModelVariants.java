@@ -0,0 +1,105 @@
+package id.rockierocker.image.rembg;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resolves which model file OnnxRembg loads when a config declares precision variants.
+ * <p>
+ * {@code onnxModelPath} is the FP32 reference model. {@code onnxModelVariants} maps variant names
+ * ({@code INT8}, {@code FP16}) to their files; FP16 models are expected to keep float32 inputs and
+ * outputs. {@code onnxModelVariant} forces one variant, otherwise the variant recorded by
+ * {@link OnnxVariantEvaluator} for the reference model is served, falling back to FP32.
+ * The selection is stored next to the reference model as {@code <model>.variant.properties}.
+ */
+@Slf4j
+public class OnnxModelVariants {
+
+    public static final String FP32 = "FP32";
+
+    private static final String SELECTED_KEY = "selected";
+
+    /* reference model path -> selected variant name, loaded lazily from the selection file */
+    private static final Map<String, String> selections = new ConcurrentHashMap<>();
+
+    /**
+     * All variants declared by the config, FP32 reference first.
+     */
+    @SuppressWarnings("unchecked")
+    public static Map<String, String> variants(Map<String, Object> config) {
+        Map<String, String> variants = new LinkedHashMap<>();
+        variants.put(FP32, (String) config.get("onnxModelPath"));
+        Object declared = config.get("onnxModelVariants");
+        if (declared instanceof Map<?, ?> map) {
+            ((Map<String, Object>) map).forEach((name, path) -> {
+                if (Objects.nonNull(path)) variants.put(name.toUpperCase(), path.toString());
+            });
+        }
+        return variants;
+    }
+
+    /**
+     * Model file to load for the given config.
+     */
+    public static String resolveModelPath(Map<String, Object> config) {
+        String basePath = (String) config.get("onnxModelPath");
+        Map<String, String> variants = variants(config);
+        if (variants.size() == 1) return basePath;
+
+        Object forced = config.get("onnxModelVariant");
+        String variant = Objects.nonNull(forced) ? forced.toString().toUpperCase() : selectedVariant(basePath);
+        String path = variants.get(variant);
+        if (Objects.isNull(path)) {
+            log.warn("ONNX model variant {} not declared for {}, using {}", variant, basePath, FP32);
+            return basePath;
+        }
+        return path;
+    }
+
+    /**
+     * Variant recorded for the reference model, FP32 when none was recorded.
+     */
+    public static String selectedVariant(String basePath) {
+        return selections.computeIfAbsent(basePath, path -> {
+            File file = selectionFile(path);
+            if (!file.isFile()) return FP32;
+            Properties properties = new Properties();
+            try (Reader reader = new FileReader(file)) {
+                properties.load(reader);
+            } catch (IOException e) {
+                log.warn("Failed to read ONNX variant selection {}", file, e);
+                return FP32;
+            }
+            return properties.getProperty(SELECTED_KEY, FP32).toUpperCase();
+        });
+    }
+
+    /**
+     * Record the variant to serve for the reference model.
+     */
+    public static void recordSelection(String basePath, String variant, Properties details) throws IOException {
+        Properties properties = new Properties();
+        properties.putAll(details);
+        properties.setProperty(SELECTED_KEY, variant);
+        try (Writer writer = new FileWriter(selectionFile(basePath))) {
+            properties.store(writer, "ONNX model variant selected by OnnxVariantEvaluator");
+        }
+        selections.put(basePath, variant);
+        log.info("ONNX model variant {} recorded for {}", variant, basePath);
+    }
+
+    private static File selectionFile(String basePath) {
+        return new File(basePath + ".variant.properties");
+    }
+}
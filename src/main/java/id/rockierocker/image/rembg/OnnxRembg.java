@@ -7,9 +7,16 @@ import ai.onnxruntime.NodeInfo;
 import ai.onnxruntime.TensorInfo;
 import id.rockierocker.image.refinment.OpenCVPNPRefinment;
 import id.rockierocker.image.rembg.constant.OnnxInputSize;
-import id.rockierocker.image.util.ImageUtil;
+import id.rockierocker.image.util.NativeImageBuffer;
+import id.rockierocker.image.util.Resampler;
 import lombok.NoArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
 
 import java.awt.image.BufferedImage;
 import java.nio.FloatBuffer;
@@ -20,6 +27,8 @@ import java.util.*;
 public class OnnxRembg implements Rembg {
 
     private Map<String, Object> config;
+    /* onnxResizeFilter, parsed once per configuration; null keeps the native resize */
+    private Resampler.Filter resizeFilter;
     OpenCVPNPRefinment openCVPNPRefinment = new OpenCVPNPRefinment();
 
     @Override
@@ -30,6 +39,7 @@ public class OnnxRembg implements Rembg {
     @Override
     public void configMap(Map<String, Object> config) {
         this.config = config;
+        this.resizeFilter = parseResizeFilter(config);
     }
 
     @Override
@@ -42,18 +52,23 @@ public class OnnxRembg implements Rembg {
 
     /* Process the input image to remove background using ONNX model */
     private BufferedImage process(BufferedImage inputImage) throws Exception {
-        String modelPath = (String) config.get("onnxModelPath");
+        String modelPath = OnnxModelVariants.resolveModelPath(config);
         log.info("Starting onnx background removal using {} model...", modelPath);
 
-        OnnxInputSize onnxInputSize = OnnxInputSize.fromString(config.getOrDefault("onnxInputSize", "INPUT_SIZE_320").toString());
+        OnnxSessionOptions sessionOptions = OnnxSessionOptions.fromConfig(config);
+        String sessionKey = OnnxSession.key(modelPath, sessionOptions);
+        OnnxInputSize onnxInputSize = OnnxInputSize.fromString(ConfigUtil.getString(config, "onnxInputSize", "INPUT_SIZE_320"));
+        if (onnxInputSize == OnnxInputSize.AUTO)
+            onnxInputSize = OnnxInputSizeSelector.select(inputImage, config, sessionKey);
         Integer configuredInputSize = onnxInputSize.inputSize;
         log.info("Configured ONNX input size: {}", onnxInputSize);
 
 
-        try {
+        // the image is copied to native memory once and shared by inference input and refinement
+        try (OnnxSession.Lease lease = OnnxSession.acquire(modelPath, sessionOptions);
+             NativeImageBuffer source = NativeImageBuffer.fromBufferedImage(inputImage)) {
 
-            var env = OrtEnvironment.getEnvironment();
-            OrtSession session = OnnxSession.getSession(modelPath);
+            OrtSession session = lease.session();
 
             // Inspect model input shape and adapt if model expects a different size
             String inputName = session.getInputNames().iterator().next();
@@ -68,27 +83,33 @@ public class OnnxRembg implements Rembg {
             // Determine target W/H to resize image to. Default to configuredInputSize.
             int targetW = configuredInputSize;
             int targetH = configuredInputSize;
+            boolean dynamicSize = true;
             if (modelShape != null && modelShape.length >= 4) {
-                long maybeN = modelShape[0];
-                long maybeC = modelShape[1];
                 long maybeH = modelShape[2];
                 long maybeW = modelShape[3];
                 // If model provides positive dims, use them. If any dimension is <=0, fall back to configured size.
                 if (maybeH > 0) targetH = (int) maybeH;
                 if (maybeW > 0) targetW = (int) maybeW;
+                dynamicSize = maybeH <= 0 && maybeW <= 0;
             }
 
-            log.info("resizing input image to {}x{}...", targetW + "", targetH + "");
-            BufferedImage resized = ImageUtil.resize(inputImage, targetW, targetH);
-            log.info("converting image to tensor...");
-            float[] tensorData = imageToTensor(resized, targetW, targetH);
-            log.info("running inference to get mask model...");
-            float[][] mask = runInference(env, session, tensorData, targetW, targetH);
-            log.info("resizing mask to original image size...");
-            float[][] resizeMaskToOriginalSize = resizeMask(mask, inputImage.getWidth(), inputImage.getHeight());
-            log.info("applying mask to original image...");
-            BufferedImage applyMask = openCVPNPRefinment.refineAndApply(inputImage, resizeMaskToOriginalSize);
-            //BufferedImage applyMask = applyMask(original, resizeMaskToOriginalSize);
+            Mat mask;
+            if (isTwoPassEnabled() && dynamicSize) {
+                mask = twoPassMask(session, sessionKey, modelShape, inputImage, source, targetW);
+            } else {
+                if (isTwoPassEnabled())
+                    log.warn("two-pass mode needs a model with dynamic input size, running single pass at {}x{}", targetW, targetH);
+                mask = inferMask(session, sessionKey, modelShape, source, targetW, targetH);
+            }
+            log.info("refining mask and applying it to original image...");
+            BufferedImage applyMask;
+            try {
+                applyMask = openCVPNPRefinment.refineAndApply(source, mask,
+                        ConfigUtil.getString(config, "refinementMode", OpenCVPNPRefinment.MODE_FULL),
+                        ConfigUtil.getInt(config, "refinementBandRadius", 6));
+            } finally {
+                mask.release();
+            }
             log.info("successfully removed background from image");
             return applyMask;
         } catch (Exception e) {
@@ -99,116 +120,212 @@ public class OnnxRembg implements Rembg {
         }
     }
 
-    /* Convert BufferedImage to float tensor with shape [1, 3, H, W] */
-    private float[] imageToTensor(BufferedImage img, int W, int H) {
-        float[] data = new float[1 * 3 * W * H];
-
-        int idxR = 0;
-        int idxG = W * H;
-        int idxB = 2 * W * H;
-
-        for (int y = 0; y < H; y++) {
-            for (int x = 0; x < W; x++) {
-                int rgb = img.getRGB(x, y);
-
-                float r = ((rgb >> 16) & 0xFF) / 255f;
-                float g = ((rgb >> 8) & 0xFF) / 255f;
-                float b = (rgb & 0xFF) / 255f;
-
-                data[idxR++] = (r - 0.5f) / 0.5f;
-                data[idxG++] = (g - 0.5f) / 0.5f;
-                data[idxB++] = (b - 0.5f) / 0.5f;
+    /*
+     * Resize the image to the model input, run inference and return the CV_32FC1 mask at model resolution.
+     * The resize stays native (INTER_AREA) unless onnxResizeFilter names a Resampler filter.
+     */
+    private Mat inferMask(
+            OrtSession session,
+            String sessionKey,
+            long[] modelShape,
+            NativeImageBuffer image,
+            int targetW,
+            int targetH
+    ) throws Exception {
+        log.info("resizing input image to {}x{} and converting to tensor...", targetW + "", targetH + "");
+        FloatBuffer tensorData = OnnxTensorBufferPool.acquire(3 * targetW * targetH);
+        try {
+            if (resizeFilter == null) {
+                image.fillTensor(tensorData, targetW, targetH);
+            } else {
+                BufferedImage resized = Resampler.resize(image.toBufferedImage(), targetW, targetH, resizeFilter);
+                try (NativeImageBuffer input = NativeImageBuffer.fromBufferedImage(resized)) {
+                    input.fillTensor(tensorData, targetW, targetH);
+                }
             }
+            log.info("running inference to get mask model...");
+            boolean dynamicBatch = modelShape != null && modelShape.length >= 4 && modelShape[0] <= 0;
+            return dynamicBatch && isBatchingEnabled()
+                    ? OnnxInferenceBatcher.infer(session, sessionKey, tensorData, targetW, targetH,
+                    ConfigUtil.getInt(config, "onnxBatchWindowMs", 5), ConfigUtil.getInt(config, "onnxBatchMaxSize", 8))
+                    : runInference(OrtEnvironment.getEnvironment(), session, sessionKey, tensorData, targetW, targetH);
+        } finally {
+            OnnxTensorBufferPool.release(tensorData);
         }
-        return data;
     }
 
-    /* Run inference on the ONNX model and return the output mask */
-    private float[][] runInference(
-            OrtEnvironment env,
+    /*
+     * Two-pass mode: a coarse pass at the configured input size locates the subject, then a second
+     * pass runs only on the padded subject box. onnxRefineInputSize is the resolution for a box as
+     * large as the frame; smaller boxes get proportionally less, snapped to a supported size, and the
+     * pass is skipped when that is no finer than the coarse one. The refined box is blended into the
+     * upscaled coarse mask over an onnxRoiFeather px ramp, giving a full-resolution CV_8UC1 mask.
+     */
+    private Mat twoPassMask(
             OrtSession session,
-            float[] input,
-            int W,
-            int H
+            String sessionKey,
+            long[] modelShape,
+            BufferedImage inputImage,
+            NativeImageBuffer source,
+            int coarseSize
     ) throws Exception {
+        int w = inputImage.getWidth();
+        int h = inputImage.getHeight();
+        OnnxInputSize refineInputSize = OnnxInputSize.fromString(ConfigUtil.getString(config, "onnxRefineInputSize", "INPUT_SIZE_1024"));
+        double padding = ConfigUtil.getDouble(config, "onnxRoiPadding", 0.1);
+
+        log.info("two-pass: coarse pass at {}", coarseSize);
+        Mat coarse = inferMask(session, sessionKey, modelShape, source, coarseSize, coarseSize);
+        Mat full = new Mat();
+        Mat binary = new Mat();
+        Mat points = new Mat();
+        try {
+            coarse.convertTo(full, CvType.CV_8UC1, 255.0);
+            Imgproc.threshold(full, binary, 127, 255, Imgproc.THRESH_BINARY);
+            Core.findNonZero(binary, points);
+            Imgproc.resize(full, full, new Size(w, h), 0, 0, Imgproc.INTER_LINEAR);
+            if (points.empty()) {
+                log.info("two-pass: no subject found in coarse mask, skipping refine pass");
+                return full;
+            }
 
-        OnnxTensor tensor = OnnxTensor.createTensor(
-                env,
-                FloatBuffer.wrap(input),
-                new long[]{1, 3, H, W}
-        );
-
-        String inputName = session.getInputNames().iterator().next();
-
-        OrtSession.Result result = session.run(
-                Map.of(inputName, tensor)
-        );
-
-        float[][][][] output =
-                (float[][][][]) result.get(0).getValue();
+            // subject box in coarse coordinates -> padded box in source coordinates
+            Rect box = Imgproc.boundingRect(points);
+            double sx = (double) w / coarse.cols();
+            double sy = (double) h / coarse.rows();
+            int padX = (int) Math.round(box.width * sx * padding);
+            int padY = (int) Math.round(box.height * sy * padding);
+            int x0 = Math.max(0, (int) Math.floor(box.x * sx) - padX);
+            int y0 = Math.max(0, (int) Math.floor(box.y * sy) - padY);
+            int x1 = Math.min(w, (int) Math.ceil((box.x + box.width) * sx) + padX);
+            int y1 = Math.min(h, (int) Math.ceil((box.y + box.height) * sy) + padY);
+            Rect roi = new Rect(x0, y0, x1 - x0, y1 - y0);
+            if (refineInputSize == OnnxInputSize.AUTO) {
+                refineInputSize = OnnxInputSizeSelector.select(inputImage.getSubimage(roi.x, roi.y, roi.width, roi.height), config, sessionKey);
+            } else {
+                // same pixel density as a full-frame pass at the configured size, not the full size on a small box
+                double share = Math.max((double) roi.width / w, (double) roi.height / h);
+                refineInputSize = OnnxInputSize.nearest((int) Math.ceil(refineInputSize.inputSize * share));
+            }
+            int refineSize = refineInputSize.inputSize;
+            if (refineSize <= coarseSize) {
+                log.info("two-pass: refine size {} for roi {} is no finer than the coarse pass, skipping it", refineSize, roi);
+                return full;
+            }
+            log.info("two-pass: refine pass at {} on roi {}", refineSize, roi);
 
-        return output[0][0]; // H x W mask (depending on model)
+            Mat refined;
+            try (NativeImageBuffer roiImage = source.region(roi)) {
+                refined = inferMask(session, sessionKey, modelShape, roiImage, refineSize, refineSize);
+            }
+            Mat refinedAlpha = new Mat();
+            try {
+                refined.convertTo(refinedAlpha, CvType.CV_8UC1, 255.0);
+                Imgproc.resize(refinedAlpha, refinedAlpha, roi.size(), 0, 0, Imgproc.INTER_LINEAR);
+                featherPaste(full, refinedAlpha, roi, ConfigUtil.getInt(config, "onnxRoiFeather", 8));
+            } finally {
+                refined.release();
+                refinedAlpha.release();
+            }
+            return full;
+        } finally {
+            coarse.release();
+            binary.release();
+            points.release();
+        }
     }
 
-    private float[][] resizeMask(
-            float[][] mask,
-            int targetW,
-            int targetH
-    ) {
-        int srcH = mask.length;
-        int srcW = mask[0].length;
-
-        float[][] resized = new float[targetH][targetW];
-
-        for (int y = 0; y < targetH; y++) {
-            float gy = ((float) y / (targetH - 1)) * (srcH - 1);
-            int y0 = (int) gy;
-            int y1 = Math.min(y0 + 1, srcH - 1);
-            float dy = gy - y0;
-
-            for (int x = 0; x < targetW; x++) {
-                float gx = ((float) x / (targetW - 1)) * (srcW - 1);
-                int x0 = (int) gx;
-                int x1 = Math.min(x0 + 1, srcW - 1);
-                float dx = gx - x0;
-
-                float v =
-                        mask[y0][x0] * (1 - dx) * (1 - dy) +
-                                mask[y0][x1] * dx * (1 - dy) +
-                                mask[y1][x0] * (1 - dx) * dy +
-                                mask[y1][x1] * dx * dy;
-
-                resized[y][x] = v;
-            }
+    /*
+     * Blends patch into full at roi: the patch weight ramps from 0 to 1 over the first feather pixels
+     * inside each roi edge, except edges lying on the image border, so the coarse/refined seam does not show.
+     */
+    static void featherPaste(Mat full, Mat patch, Rect roi, int feather) {
+        Mat target = full.submat(roi);
+        if (feather <= 0) {
+            patch.copyTo(target);
+            target.release();
+            return;
+        }
+        Mat columnWeights = new Mat(1, roi.width, CvType.CV_32FC1);
+        Mat rowWeights = new Mat(roi.height, 1, CvType.CV_32FC1);
+        Mat weight = new Mat();
+        Mat rowWeight = new Mat();
+        Mat base = new Mat();
+        Mat top = new Mat();
+        try {
+            columnWeights.put(0, 0, ramp(roi.width, feather, roi.x > 0, roi.x + roi.width < full.cols()));
+            rowWeights.put(0, 0, ramp(roi.height, feather, roi.y > 0, roi.y + roi.height < full.rows()));
+            Core.repeat(columnWeights, roi.height, 1, weight);
+            Core.repeat(rowWeights, 1, roi.width, rowWeight);
+            Core.min(weight, rowWeight, weight);
+
+            // target += weight * (patch - target), in float
+            target.convertTo(base, CvType.CV_32FC1);
+            patch.convertTo(top, CvType.CV_32FC1);
+            Core.subtract(top, base, top);
+            Core.multiply(top, weight, top);
+            Core.add(base, top, base);
+            base.convertTo(target, CvType.CV_8UC1);
+        } finally {
+            target.release();
+            columnWeights.release();
+            rowWeights.release();
+            weight.release();
+            rowWeight.release();
+            base.release();
+            top.release();
         }
-        return resized;
     }
 
+    private static float[] ramp(int n, int feather, boolean fadeStart, boolean fadeEnd) {
+        float[] ramp = new float[n];
+        for (int i = 0; i < n; i++) {
+            float v = 1f;
+            if (fadeStart) v = Math.min(v, (i + 1f) / (feather + 1f));
+            if (fadeEnd) v = Math.min(v, (n - i) / (feather + 1f));
+            ramp[i] = v;
+        }
+        return ramp;
+    }
 
-    private BufferedImage applyMask(
-            BufferedImage original,
-            float[][] mask
-    ) {
-        int W = original.getWidth();
-        int H = original.getHeight();
+    /* onnxResizeFilter: LANCZOS3, MITCHELL or AREA; empty or NATIVE keeps the OpenCV resize, so does an unknown name */
+    private static Resampler.Filter parseResizeFilter(Map<String, Object> config) {
+        String value = ConfigUtil.getString(config, "onnxResizeFilter", "NATIVE").trim().toUpperCase();
+        if (value.isEmpty() || value.equals("NATIVE")) return null;
+        for (Resampler.Filter filter : Resampler.Filter.values()) {
+            if (filter.name().equals(value)) return filter;
+        }
+        log.warn("unknown onnxResizeFilter '{}', falling back to the native resize", value);
+        return null;
+    }
 
-        BufferedImage out =
-                new BufferedImage(W, H, BufferedImage.TYPE_INT_ARGB);
+    private boolean isTwoPassEnabled() {
+        return ConfigUtil.getBoolean(config, "onnxTwoPass", false);
+    }
 
-        for (int y = 0; y < H; y++) {
-            for (int x = 0; x < W; x++) {
-                int rgb = original.getRGB(x, y);
+    /* Batching is on by default, set onnxBatchEnabled=false in the config to run every image alone */
+    private boolean isBatchingEnabled() {
+        return ConfigUtil.getBoolean(config, "onnxBatchEnabled", true);
+    }
 
-                int alpha = (int) (mask[y][x] * 255);
-                alpha = alpha > 128 ? 255 : 0; // threshold
+    /* Run inference on the ONNX model and return the output mask as a CV_32FC1 Mat at model resolution */
+    private Mat runInference(
+            OrtEnvironment env,
+            OrtSession session,
+            String sessionKey,
+            FloatBuffer input,
+            int W,
+            int H
+    ) throws Exception {
 
-                int rgba =
-                        (alpha << 24) |
-                                (rgb & 0x00FFFFFF);
+        String inputName = session.getInputNames().iterator().next();
 
-                out.setRGB(x, y, rgba);
-            }
+        try (OnnxTensor tensor = OnnxTensor.createTensor(
+                env,
+                input,
+                new long[]{1, 3, H, W}
+        ); OrtSession.Result result = OnnxInputSizeSelector.timedRun(session, sessionKey, Map.of(inputName, tensor), Math.max(W, H))) {
+            return OnnxInferenceBatcher.outputMasksToMats((OnnxTensor) result.get(0))[0];
         }
-        return out;
     }
 }
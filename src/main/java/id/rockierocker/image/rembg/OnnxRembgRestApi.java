@@ -4,6 +4,7 @@ import ai.onnxruntime.*;
 import id.rockierocker.image.refinment.OpenCVPNPRefinment;
 import id.rockierocker.image.rembg.constant.OnnxInputSize;
 import id.rockierocker.image.util.ImageUtil;
+import id.rockierocker.image.util.PngEncoder;
 import lombok.NoArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.core.io.ByteArrayResource;
@@ -61,7 +62,7 @@ public class OnnxRembgRestApi implements Rembg {
         HttpHeaders headers = new HttpHeaders();
         headers.setContentType(MediaType.MULTIPART_FORM_DATA);
         MultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
-        body.add("file", new ByteArrayResource(ImageUtil.toBytesPng(inputImage)) {
+        body.add("file", new ByteArrayResource(ImageUtil.toBytesPng(inputImage, PngEncoder.FAST)) {
             @Override
             public String getFilename() {
                 return "image.png";
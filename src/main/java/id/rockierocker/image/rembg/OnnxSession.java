@@ -1,24 +1,206 @@
 package id.rockierocker.image.rembg;
 
+import ai.onnxruntime.NodeInfo;
+import ai.onnxruntime.OnnxTensor;
+import ai.onnxruntime.OrtEnvironment;
 import ai.onnxruntime.OrtSession;
+import ai.onnxruntime.TensorInfo;
 import lombok.extern.slf4j.Slf4j;
 
-import java.util.HashMap;
+import java.io.File;
+import java.nio.FloatBuffer;
+import java.util.Comparator;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Process-wide registry of ONNX Runtime sessions keyed by model path and {@link OnnxSessionOptions}.
+ * <p>
+ * Every model is loaded at most once, even when many requests ask for it at the same time.
+ * Sessions are leased through {@link #acquire(String)} so that idle ones can be closed
+ * (least recently used first) once the estimated native memory of all loaded sessions
+ * exceeds the configured budget.
+ */
 @Slf4j
 public class OnnxSession {
-    private static Map<String, Object> sessionLoaded = new HashMap<>();
-    public static OrtSession getSession(String modelPath) throws Exception {
-        log.info("Load ONNX model from path: {}", modelPath);
-        OrtSession ortSession = (OrtSession) sessionLoaded.get(modelPath);
-        if(ortSession == null){
-            log.info("ONNX model not loaded yet. Loading...");
-            ortSession = ai.onnxruntime.OrtEnvironment.getEnvironment().createSession(modelPath);
-            sessionLoaded.put(modelPath, ortSession);
-        } else {
-            log.info("ONNX model already loaded. Reusing existing session.");
-        }
-        return ortSession;
+
+    /* Rough multiplier from model file size to resident native memory (weights + arena) */
+    private static final long NATIVE_MEMORY_FACTOR = 2;
+
+    private static final Map<String, Entry> sessionLoaded = new ConcurrentHashMap<>();
+    private static volatile long memoryBudgetBytes = Long.MAX_VALUE;
+
+    /**
+     * Set the native memory budget shared by all loaded sessions.
+     *
+     * @param budgetBytes budget in bytes, values <= 0 disable eviction
+     */
+    public static void setMemoryBudgetBytes(long budgetBytes) {
+        memoryBudgetBytes = budgetBytes <= 0 ? Long.MAX_VALUE : budgetBytes;
+        log.info("ONNX session memory budget set to {} bytes", memoryBudgetBytes);
+    }
+
+    /**
+     * Lease the session for the given model with default session options.
+     *
+     * @param modelPath path to the .onnx model
+     * @return an open lease on the shared session
+     */
+    public static Lease acquire(String modelPath) throws Exception {
+        return acquire(modelPath, OnnxSessionOptions.DEFAULT);
+    }
+
+    /**
+     * Lease the session for the given model and options, loading it if needed.
+     * The lease must be closed once the caller is done running inference.
+     *
+     * @param modelPath path to the .onnx model
+     * @param options   session options the model is loaded with
+     * @return an open lease on the shared session
+     */
+    public static Lease acquire(String modelPath, OnnxSessionOptions options) throws Exception {
+        String key = key(modelPath, options);
+        while (true) {
+            Entry entry = sessionLoaded.computeIfAbsent(key, k -> new Entry(k, modelPath, options));
+            OrtSession session = entry.open();
+            if (session == null) {
+                // lost a race with eviction, load a fresh entry
+                sessionLoaded.remove(key, entry);
+                continue;
+            }
+            evictIfNeeded(entry);
+            return new Lease(entry, session);
+        }
+    }
+
+    /* Identifies one loaded session: the model path plus the options it was loaded with */
+    public static String key(String modelPath, OnnxSessionOptions options) {
+        return modelPath + "|" + options.cacheKey();
+    }
+
+    /**
+     * Load the model and run one inference on a blank tensor so graph optimization and
+     * arena allocation happen before the first user request. A second, timed run seeds the
+     * latency estimate {@link OnnxInputSizeSelector} uses for its budget.
+     *
+     * @param modelPath path to the .onnx model
+     * @param options   session options the model is loaded with
+     * @param inputSize input size used when the model has dynamic spatial dimensions
+     */
+    public static void warmup(String modelPath, OnnxSessionOptions options, int inputSize) throws Exception {
+        try (Lease lease = acquire(modelPath, options)) {
+            OrtSession session = lease.session();
+            String inputName = session.getInputNames().iterator().next();
+            long[] shape = {1, 3, inputSize, inputSize};
+            NodeInfo nodeInfo = session.getInputInfo().get(inputName);
+            if (nodeInfo != null && nodeInfo.getInfo() instanceof TensorInfo tensorInfo) {
+                long[] modelShape = tensorInfo.getShape();
+                if (modelShape.length >= 4) {
+                    if (modelShape[2] > 0) shape[2] = modelShape[2];
+                    if (modelShape[3] > 0) shape[3] = modelShape[3];
+                }
+            }
+            long start = System.currentTimeMillis();
+            FloatBuffer blank = FloatBuffer.allocate((int) (shape[1] * shape[2] * shape[3]));
+            try (OnnxTensor tensor = OnnxTensor.createTensor(OrtEnvironment.getEnvironment(), blank, shape)) {
+                try (OrtSession.Result ignored = session.run(Map.of(inputName, tensor))) {
+                    log.info("Warmup inference for {} done in {} ms", modelPath, System.currentTimeMillis() - start);
+                }
+                /* the first run pays for arena allocation, a second one seeds a representative latency estimate */
+                OnnxInputSizeSelector.timedRun(session, key(modelPath, options), Map.of(inputName, tensor), (int) Math.max(shape[2], shape[3])).close();
+            }
+        }
+    }
+
+    /* Close least recently used idle sessions until the loaded set fits the budget again */
+    private static synchronized void evictIfNeeded(Entry justUsed) {
+        long total = sessionLoaded.values().stream().mapToLong(e -> e.estimatedBytes).sum();
+        if (total <= memoryBudgetBytes) return;
+
+        var candidates = sessionLoaded.values().stream()
+                .filter(e -> e != justUsed)
+                .sorted(Comparator.comparingLong(e -> e.lastAccess))
+                .toList();
+        for (Entry candidate : candidates) {
+            if (total <= memoryBudgetBytes) break;
+            if (candidate.closeIfIdle()) {
+                sessionLoaded.remove(candidate.key, candidate);
+                total -= candidate.estimatedBytes;
+                log.info("Evicted idle ONNX session {} to stay within memory budget", candidate.modelPath);
+            }
+        }
+        if (total > memoryBudgetBytes)
+            log.warn("ONNX sessions use ~{} bytes which exceeds the budget of {} bytes; all others are busy", total, memoryBudgetBytes);
+    }
+
+    /**
+     * Leased reference to a shared session. Closing the lease does not close the session,
+     * it only marks it idle again so it becomes eligible for eviction.
+     */
+    public static final class Lease implements AutoCloseable {
+        private final Entry entry;
+        private final OrtSession session;
+        private boolean released;
+
+        private Lease(Entry entry, OrtSession session) {
+            this.entry = entry;
+            this.session = session;
+        }
+
+        public OrtSession session() {
+            return session;
+        }
+
+        @Override
+        public void close() {
+            if (released) return;
+            released = true;
+            entry.inFlight.decrementAndGet();
+        }
+    }
+
+    private static final class Entry {
+        private final String key;
+        private final String modelPath;
+        private final OnnxSessionOptions options;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private volatile OrtSession session;
+        private volatile long lastAccess;
+        private volatile long estimatedBytes;
+        private boolean closed;
+
+        private Entry(String key, String modelPath, OnnxSessionOptions options) {
+            this.key = key;
+            this.modelPath = modelPath;
+            this.options = options;
+        }
+
+        /* Only one thread loads a given model; the others wait on the entry monitor. Returns null once evicted */
+        private synchronized OrtSession open() throws Exception {
+            if (closed) return null;
+            if (session == null) {
+                log.info("ONNX model {} not loaded yet. Loading...", modelPath);
+                long start = System.currentTimeMillis();
+                session = options.createSession(modelPath);
+                estimatedBytes = new File(modelPath).length() * NATIVE_MEMORY_FACTOR;
+                log.info("ONNX model {} loaded in {} ms", modelPath, System.currentTimeMillis() - start);
+            }
+            inFlight.incrementAndGet();
+            lastAccess = System.nanoTime();
+            return session;
+        }
+
+        private synchronized boolean closeIfIdle() {
+            if (session == null || inFlight.get() > 0) return false;
+            try {
+                session.close();
+            } catch (Exception e) {
+                log.warn("Failed to close ONNX session {}", modelPath, e);
+            }
+            session = null;
+            closed = true;
+            return true;
+        }
     }
 }
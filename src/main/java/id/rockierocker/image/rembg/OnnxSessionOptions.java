@@ -0,0 +1,133 @@
+package id.rockierocker.image.rembg;
+
+import ai.onnxruntime.OrtEnvironment;
+import ai.onnxruntime.OrtException;
+import ai.onnxruntime.OrtSession;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * ONNX Runtime session settings read from a rembg config map (the {@code rembg_config.config} JSONB).
+ * <p>
+ * Supported keys, all optional:
+ * <ul>
+ *     <li>{@code onnxIntraOpThreads} / {@code onnxInterOpThreads}: thread pool sizes (0 = ORT default)</li>
+ *     <li>{@code onnxExecutionMode}: {@code SEQUENTIAL} or {@code PARALLEL}</li>
+ *     <li>{@code onnxOptimizationLevel}: {@code NO_OPT}, {@code BASIC_OPT}, {@code EXTENDED_OPT} or {@code ALL_OPT}</li>
+ *     <li>{@code onnxCpuArena}: enable the CPU memory arena</li>
+ *     <li>{@code onnxMemoryPattern}: enable memory pattern optimization</li>
+ *     <li>{@code onnxOptimizedModelCache}: save the optimized graph next to the model and load it on later startups</li>
+ * </ul>
+ */
+@Slf4j
+@Getter
+public class OnnxSessionOptions {
+
+    public static final OnnxSessionOptions DEFAULT = new OnnxSessionOptions(0, 0, "SEQUENTIAL", "ALL_OPT", true, true, false);
+
+    private final int intraOpThreads;
+    private final int interOpThreads;
+    private final String executionMode;
+    private final String optimizationLevel;
+    private final boolean cpuArena;
+    private final boolean memoryPattern;
+    private final boolean optimizedModelCache;
+
+    private OnnxSessionOptions(int intraOpThreads, int interOpThreads, String executionMode, String optimizationLevel,
+                               boolean cpuArena, boolean memoryPattern, boolean optimizedModelCache) {
+        this.intraOpThreads = intraOpThreads;
+        this.interOpThreads = interOpThreads;
+        this.executionMode = executionMode.toUpperCase();
+        this.optimizationLevel = optimizationLevel.toUpperCase();
+        this.cpuArena = cpuArena;
+        this.memoryPattern = memoryPattern;
+        this.optimizedModelCache = optimizedModelCache;
+    }
+
+    public static OnnxSessionOptions fromConfig(Map<String, Object> config) {
+        if (config == null) return DEFAULT;
+        return new OnnxSessionOptions(
+                ConfigUtil.getInt(config, "onnxIntraOpThreads", DEFAULT.intraOpThreads),
+                ConfigUtil.getInt(config, "onnxInterOpThreads", DEFAULT.interOpThreads),
+                ConfigUtil.getString(config, "onnxExecutionMode", DEFAULT.executionMode),
+                ConfigUtil.getString(config, "onnxOptimizationLevel", DEFAULT.optimizationLevel),
+                ConfigUtil.getBoolean(config, "onnxCpuArena", DEFAULT.cpuArena),
+                ConfigUtil.getBoolean(config, "onnxMemoryPattern", DEFAULT.memoryPattern),
+                ConfigUtil.getBoolean(config, "onnxOptimizedModelCache", DEFAULT.optimizedModelCache)
+        );
+    }
+
+    /* Identifies sessions that can be shared: same model loaded with the same options */
+    public String cacheKey() {
+        return intraOpThreads + "/" + interOpThreads + "/" + executionMode + "/" + optimizationLevel
+                + "/" + cpuArena + "/" + memoryPattern + "/" + optimizedModelCache;
+    }
+
+    /**
+     * Create the session for the given model. When the optimized model cache is enabled and a
+     * cached graph newer than the model exists, that graph is loaded without re-optimizing it;
+     * otherwise the optimized graph is written to the cache for the next startup. ORT writes it to a
+     * temp file of its own that is then moved into place, so concurrent loads of the same model never
+     * see a partly written cache.
+     */
+    public OrtSession createSession(String modelPath) throws OrtException {
+        String pathToLoad = modelPath;
+        Path cacheTmp = null;
+        Path cacheTarget = null;
+        try (OrtSession.SessionOptions options = new OrtSession.SessionOptions()) {
+            if (intraOpThreads > 0) options.setIntraOpNumThreads(intraOpThreads);
+            if (interOpThreads > 0) options.setInterOpNumThreads(interOpThreads);
+            options.setExecutionMode(OrtSession.SessionOptions.ExecutionMode.valueOf(executionMode));
+            options.setCPUArenaAllocator(cpuArena);
+            options.setMemoryPatternOptimization(memoryPattern);
+
+            OrtSession.SessionOptions.OptLevel optLevel = OrtSession.SessionOptions.OptLevel.valueOf(optimizationLevel);
+            if (optimizedModelCache) {
+                File model = new File(modelPath);
+                File cached = new File(modelPath + "." + optimizationLevel.toLowerCase() + ".ort.onnx");
+                if (cached.isFile() && cached.lastModified() >= model.lastModified()) {
+                    log.info("Loading pre-optimized ONNX model from {}", cached.getPath());
+                    pathToLoad = cached.getPath();
+                    optLevel = OrtSession.SessionOptions.OptLevel.NO_OPT;
+                } else {
+                    log.info("Optimized ONNX model will be cached at {}", cached.getPath());
+                    cacheTarget = cached.toPath();
+                    cacheTmp = cacheTarget.resolveSibling(cached.getName() + "." + UUID.randomUUID() + ".tmp");
+                    options.setOptimizedModelFilePath(cacheTmp.toString());
+                }
+            }
+            options.setOptimizationLevel(optLevel);
+
+            OrtSession session = OrtEnvironment.getEnvironment().createSession(pathToLoad, options);
+            if (cacheTmp != null) publish(cacheTmp, cacheTarget);
+            return session;
+        } finally {
+            if (cacheTmp != null) deleteQuietly(cacheTmp);
+        }
+    }
+
+    /* a failed move only costs re-optimizing on the next startup */
+    private static void publish(Path tmp, Path target) {
+        try {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Failed to save the optimized ONNX model to {}", target, e);
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Failed to delete {}", file, e);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package id.rockierocker.image.rembg;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Pool of direct (native order) float buffers used as ONNX input tensors.
+ * <p>
+ * Buffers are pooled by capacity, which in practice means one pool per model input size.
+ * ONNX Runtime reads direct buffers in place, so a pooled buffer avoids both the heap
+ * {@code float[]} and the copy into native memory on every request.
+ */
+public class OnnxTensorBufferPool {
+
+    private static final int MAX_POOLED_PER_SIZE = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    private static final Map<Integer, Queue<FloatBuffer>> pools = new ConcurrentHashMap<>();
+
+    /**
+     * Borrow a direct buffer holding exactly {@code floats} elements, positioned at 0.
+     * Its content is undefined; callers are expected to overwrite every element.
+     */
+    public static FloatBuffer acquire(int floats) {
+        FloatBuffer buffer = pools.computeIfAbsent(floats, k -> new ConcurrentLinkedQueue<>()).poll();
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(floats * Float.BYTES)
+                    .order(ByteOrder.nativeOrder())
+                    .asFloatBuffer();
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Return a buffer obtained from {@link #acquire(int)}. Buffers beyond the pool limit
+     * are dropped and left to the garbage collector.
+     */
+    public static void release(FloatBuffer buffer) {
+        if (buffer == null || !buffer.isDirect()) return;
+        Queue<FloatBuffer> pool = pools.computeIfAbsent(buffer.capacity(), k -> new ConcurrentLinkedQueue<>());
+        if (pool.size() < MAX_POOLED_PER_SIZE) pool.offer(buffer);
+    }
+}
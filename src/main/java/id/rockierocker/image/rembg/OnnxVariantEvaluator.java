@@ -0,0 +1,129 @@
+package id.rockierocker.image.rembg;
+
+import id.rockierocker.image.rembg.constant.OnnxInputSize;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Offline evaluation of ONNX model precision variants.
+ * <p>
+ * Runs every variant over a reference image set, reports mask IoU against the FP32 result and
+ * mean latency, and records the fastest variant whose mean IoU is within the tolerance as the one
+ * {@link OnnxModelVariants} serves. Usage:
+ * <pre>
+ * java -cp app.jar -Dloader.main=id.rockierocker.image.rembg.OnnxVariantEvaluator \
+ *     org.springframework.boot.loader.launch.PropertiesLauncher \
+ *     &lt;fp32.onnx&gt; &lt;imageDir&gt; &lt;iouTolerance&gt; &lt;inputSize&gt; NAME=path [NAME=path ...]
+ * </pre>
+ * e.g. {@code ./data/onnx-model/isnet-anime.onnx ./data-test/rembg 0.02 INPUT_SIZE_320 INT8=./data/onnx-model/isnet-anime.int8.onnx}
+ */
+@Slf4j
+public class OnnxVariantEvaluator {
+
+    private static final int ITERATIONS = 5;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 5) {
+            System.err.println("usage: <fp32.onnx> <imageDir> <iouTolerance> <inputSize> NAME=path [NAME=path ...]");
+            System.exit(1);
+        }
+        String basePath = args[0];
+        File imageDir = new File(args[1]);
+        double tolerance = Double.parseDouble(args[2]);
+        OnnxInputSize inputSize = OnnxInputSize.fromString(args[3]);
+
+        Map<String, String> declared = new LinkedHashMap<>();
+        for (int i = 4; i < args.length; i++) {
+            String[] pair = args[i].split("=", 2);
+            declared.put(pair[0].toUpperCase(), pair[1]);
+        }
+
+        File[] files = imageDir.listFiles((dir, name) -> name.matches("(?i).*\\.(png|jpe?g)$"));
+        if (files == null || files.length == 0) throw new IllegalArgumentException("No images in " + imageDir);
+        Arrays.sort(files);
+        List<BufferedImage> images = new ArrayList<>();
+        for (File file : files) images.add(ImageIO.read(file));
+
+        Map<String, Object> config = new HashMap<>();
+        config.put("onnxModelPath", basePath);
+        config.put("onnxModelVariants", declared);
+        config.put("onnxInputSize", inputSize.name());
+        config.put("onnxBatchEnabled", false);
+
+        Map<String, String> variants = OnnxModelVariants.variants(config);
+        Map<String, List<BufferedImage>> outputs = new LinkedHashMap<>();
+        Map<String, Double> latencies = new LinkedHashMap<>();
+        for (String variant : variants.keySet()) {
+            config.put("onnxModelVariant", variant);
+            OnnxRembg rembg = new OnnxRembg();
+            rembg.configMap(config);
+            rembg.removeBackground(images.get(0)); // warmup
+
+            List<BufferedImage> results = new ArrayList<>();
+            long total = 0;
+            for (BufferedImage image : images) {
+                BufferedImage result = null;
+                for (int i = 0; i < ITERATIONS; i++) {
+                    long start = System.nanoTime();
+                    result = rembg.removeBackground(image);
+                    total += System.nanoTime() - start;
+                }
+                results.add(result);
+            }
+            outputs.put(variant, results);
+            latencies.put(variant, total / (double) (ITERATIONS * images.size()) / 1_000_000.0);
+        }
+
+        List<BufferedImage> reference = outputs.get(OnnxModelVariants.FP32);
+        String selected = OnnxModelVariants.FP32;
+        Properties details = new Properties();
+        System.out.printf("%-8s %12s %10s%n", "variant", "latency ms", "mean IoU");
+        for (String variant : variants.keySet()) {
+            double iou = 0;
+            List<BufferedImage> results = outputs.get(variant);
+            for (int i = 0; i < images.size(); i++) iou += maskIoU(reference.get(i), results.get(i));
+            iou /= images.size();
+            double latency = latencies.get(variant);
+            System.out.printf("%-8s %12.1f %10.4f%n", variant, latency, iou);
+            details.setProperty(variant.toLowerCase() + ".latencyMs", String.format("%.1f", latency));
+            details.setProperty(variant.toLowerCase() + ".iou", String.format("%.4f", iou));
+
+            if (iou >= 1.0 - tolerance && latency < latencies.get(selected)) selected = variant;
+        }
+        details.setProperty("iouTolerance", String.valueOf(tolerance));
+        details.setProperty("inputSize", inputSize.name());
+        OnnxModelVariants.recordSelection(basePath, selected, details);
+        System.out.println("selected variant: " + selected);
+    }
+
+    /* IoU of the foregrounds (alpha > 127) of two cutouts of the same size */
+    static double maskIoU(BufferedImage a, BufferedImage b) {
+        int w = a.getWidth();
+        int h = a.getHeight();
+        int[] rowA = new int[w];
+        int[] rowB = new int[w];
+        long intersection = 0;
+        long union = 0;
+        for (int y = 0; y < h; y++) {
+            a.getRGB(0, y, w, 1, rowA, 0, w);
+            b.getRGB(0, y, w, 1, rowB, 0, w);
+            for (int x = 0; x < w; x++) {
+                boolean fa = (rowA[x] >>> 24) > 127;
+                boolean fb = (rowB[x] >>> 24) > 127;
+                if (fa && fb) intersection++;
+                if (fa || fb) union++;
+            }
+        }
+        return union == 0 ? 1.0 : intersection / (double) union;
+    }
+}
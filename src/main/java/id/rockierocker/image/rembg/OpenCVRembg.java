@@ -1,11 +1,13 @@
 package id.rockierocker.image.rembg;
 
+import id.rockierocker.image.analysis.ImageAnalyzer;
+import id.rockierocker.image.analysis.ImageStats;
+import id.rockierocker.image.util.NativeImageBuffer;
 import lombok.extern.slf4j.Slf4j;
 import org.opencv.core.*;
 import org.opencv.imgproc.Imgproc;
 
 import java.awt.image.BufferedImage;
-import java.awt.image.DataBufferByte;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -51,15 +53,18 @@ public class OpenCVRembg implements Rembg {
         // Read input image
         log.info("Image size: {}x{}", inputImage.getWidth(), inputImage.getHeight());
 
-        // Convert BufferedImage to OpenCV Mat
-        Mat src = bufferedImageToMat(inputImage);
+        // Convert BufferedImage to OpenCV Mat (one bulk copy, channel order converted natively)
+        Mat src;
+        try (NativeImageBuffer buffer = NativeImageBuffer.fromBufferedImage(inputImage)) {
+            src = buffer.bgr();
+        }
 
         // Apply background removal using multiple techniques
-        String method = (String) config.getOrDefault("method", "auto");
+        String method = ConfigUtil.getString(config, "method", "auto");
 
         // Auto-detect best method if set to "auto"
         if ("auto".equalsIgnoreCase(method)) {
-            method = detectBestMethod(src);
+            method = detectBestMethod(ImageAnalyzer.analyze(inputImage));
             log.info("Auto-detected best method: {}", method);
         }
 
@@ -82,37 +87,37 @@ public class OpenCVRembg implements Rembg {
                 result = removeBackgroundGrabCut(src);
         }
 
-        // Convert back to BufferedImage with alpha channel
-        BufferedImage output = matToBufferedImage(result);
+        // Convert back to BufferedImage with alpha channel, the buffer takes ownership of result
+        BufferedImage output;
+        try (NativeImageBuffer buffer = NativeImageBuffer.wrap(result)) {
+            output = buffer.toBufferedImage();
+        }
 
         // Clean up
         src.release();
-        result.release();
 
         log.info("Successfully removed background using OpenCV method: {}", method);
         return output;
     }
 
+    /*
+     * ImageAnalyzer edge ratio (Sobel >= 150 on the <= 256 px copy) above which auto mode picks contour.
+     * Calibrated on data-test/rembg at 0.25x-2x and with crops against the former full-resolution
+     * Canny(50, 150) > 0.05 decision: every cutoff in 0.100-0.1275 disagrees least (6 of 28 cases).
+     * The residue is the Canny ratio itself halving per resolution doubling, which the new metric does not.
+     */
+    static final double CLEAR_EDGE_RATIO = 0.11;
+
     /**
      * Auto-detect the best method based on image characteristics
      */
-    private String detectBestMethod(Mat src) {
+    static String detectBestMethod(ImageStats stats) {
         log.info("Analyzing image to detect best method...");
 
-        // Convert to HSV for analysis
-        Mat hsv = new Mat();
-        Imgproc.cvtColor(src, hsv, Imgproc.COLOR_BGR2HSV);
-
-        // Calculate background uniformity by sampling edges
-        double uniformity = calculateBackgroundUniformity(hsv);
+        double uniformity = stats.getBorderUniformity();
         log.info("Background uniformity score: {}", uniformity);
 
-        // Calculate edge strength
-        Mat gray = new Mat();
-        Imgproc.cvtColor(src, gray, Imgproc.COLOR_BGR2GRAY);
-        Mat edges = new Mat();
-        Imgproc.Canny(gray, edges, 50, 150);
-        double edgeRatio = Core.countNonZero(edges) / (double)(edges.rows() * edges.cols());
+        double edgeRatio = stats.getEdgeRatio();
         log.info("Edge ratio: {}", edgeRatio);
 
         // Decision logic
@@ -122,7 +127,7 @@ public class OpenCVRembg implements Rembg {
             // High uniformity = uniform background (likely white/solid color)
             method = "threshold";
             log.info("Detected uniform background -> using threshold");
-        } else if (edgeRatio > 0.05) {
+        } else if (edgeRatio > CLEAR_EDGE_RATIO) {
             // High edge ratio = clear object boundaries
             method = "contour";
             log.info("Detected clear edges -> using contour");
@@ -132,95 +137,17 @@ public class OpenCVRembg implements Rembg {
             log.info("Detected complex background -> using grabcut");
         }
 
-        // Clean up
-        hsv.release();
-        gray.release();
-        edges.release();
-
         return method;
     }
 
-    /**
-     * Calculate background uniformity by analyzing edge pixels
-     */
-    private double calculateBackgroundUniformity(Mat hsv) {
-        // Sample pixels from the edges (likely background)
-        int rows = hsv.rows();
-        int cols = hsv.cols();
-
-        List<Double> brightnessValues = new ArrayList<>();
-        List<Double> saturationValues = new ArrayList<>();
-
-        // Sample top edge
-        for (int x = 0; x < cols; x += 5) {
-            double[] pixel = hsv.get(0, x);
-            if (pixel != null) {
-                saturationValues.add(pixel[1]);
-                brightnessValues.add(pixel[2]);
-            }
-        }
-
-        // Sample bottom edge
-        for (int x = 0; x < cols; x += 5) {
-            double[] pixel = hsv.get(rows - 1, x);
-            if (pixel != null) {
-                saturationValues.add(pixel[1]);
-                brightnessValues.add(pixel[2]);
-            }
-        }
-
-        // Sample left edge
-        for (int y = 0; y < rows; y += 5) {
-            double[] pixel = hsv.get(y, 0);
-            if (pixel != null) {
-                saturationValues.add(pixel[1]);
-                brightnessValues.add(pixel[2]);
-            }
-        }
-
-        // Sample right edge
-        for (int y = 0; y < rows; y += 5) {
-            double[] pixel = hsv.get(y, cols - 1);
-            if (pixel != null) {
-                saturationValues.add(pixel[1]);
-                brightnessValues.add(pixel[2]);
-            }
-        }
-
-        // Calculate standard deviation
-        double avgBrightness = brightnessValues.stream().mapToDouble(d -> d).average().orElse(0);
-        double avgSaturation = saturationValues.stream().mapToDouble(d -> d).average().orElse(0);
-
-        double stdDevBrightness = Math.sqrt(
-            brightnessValues.stream()
-                .mapToDouble(d -> Math.pow(d - avgBrightness, 2))
-                .average().orElse(0)
-        );
-
-        double stdDevSaturation = Math.sqrt(
-            saturationValues.stream()
-                .mapToDouble(d -> Math.pow(d - avgSaturation, 2))
-                .average().orElse(0)
-        );
-
-        // Uniformity score: lower std dev = more uniform (0-1 scale)
-        // High brightness (>200) + low saturation (<30) + low std dev = uniform white background
-        double brightnessUniformity = 1.0 - Math.min(stdDevBrightness / 128.0, 1.0);
-        double saturationUniformity = 1.0 - Math.min(stdDevSaturation / 128.0, 1.0);
-        boolean isLightBackground = avgBrightness > 200 && avgSaturation < 30;
-
-        double uniformity = (brightnessUniformity + saturationUniformity) / 2.0;
-        if (isLightBackground) {
-            uniformity *= 1.2; // Boost score for light backgrounds
-        }
-
-        return Math.min(uniformity, 1.0);
-    }
-
     /**
      * Remove background using GrabCut algorithm (best for complex backgrounds)
      */
     private Mat removeBackgroundGrabCut(Mat src) {
+        double scale = ConfigUtil.getDouble(config, "grabcutScale", 1.0);
+        if (scale > 0 && scale < 1.0) {
+            return removeBackgroundGrabCutPyramid(src, scale);
+        }
         log.info("Using GrabCut algorithm...");
 
         Mat mask = new Mat();
@@ -243,17 +170,11 @@ public class OpenCVRembg implements Rembg {
             rect,
             bgModel,
             fgModel,
-            5,
+            ConfigUtil.getInt(config, "grabcutIterations", 5),
             Imgproc.GC_INIT_WITH_RECT
         );
 
-        // Create mask where 0 and 2 are background, 1 and 3 are foreground
-        Mat mask2 = new Mat();
-        Core.compare(mask, new Scalar(Imgproc.GC_PR_FGD), mask2, Core.CMP_EQ);
-        Mat mask3 = new Mat();
-        Core.compare(mask, new Scalar(Imgproc.GC_FGD), mask3, Core.CMP_EQ);
-        Mat finalMask = new Mat();
-        Core.bitwise_or(mask2, mask3, finalMask);
+        Mat finalMask = grabCutForeground(mask);
 
         // Apply mask to create RGBA image
         Mat result = applyAlphaMask(src, finalMask);
@@ -262,13 +183,122 @@ public class OpenCVRembg implements Rembg {
         mask.release();
         bgModel.release();
         fgModel.release();
-        mask2.release();
-        mask3.release();
         finalMask.release();
 
         return result;
     }
 
+    /**
+     * Pyramid GrabCut: segment a downscaled copy, upsample the label mask, then run a few
+     * GC_INIT_WITH_MASK iterations at full resolution where only a dilated band around the
+     * boundary is left undecided (and only inside the band's bounding box).
+     */
+    private Mat removeBackgroundGrabCutPyramid(Mat src, double scale) {
+        log.info("Using pyramid GrabCut algorithm at scale {}...", scale);
+        int iterations = ConfigUtil.getInt(config, "grabcutIterations", 5);
+        int refineIterations = ConfigUtil.getInt(config, "grabcutRefineIterations", 1);
+        int bandRadius = ConfigUtil.getInt(config, "grabcutBandRadius", 8);
+
+        // 1. coarse segmentation
+        Mat small = new Mat();
+        Imgproc.resize(src, small, new Size(), scale, scale, Imgproc.INTER_AREA);
+        int margin = Math.max(1, (int) Math.round(10 * scale));
+        Rect rect = new Rect(margin, margin, small.cols() - 2 * margin, small.rows() - 2 * margin);
+        Mat smallMask = new Mat();
+        Mat bgModel = new Mat();
+        Mat fgModel = new Mat();
+        Imgproc.grabCut(small, smallMask, rect, bgModel, fgModel, iterations, Imgproc.GC_INIT_WITH_RECT);
+        small.release();
+
+        // 2. upsampled foreground and the undecided band around its boundary
+        Mat smallFg = grabCutForeground(smallMask);
+        smallMask.release();
+        Mat fg = new Mat();
+        Imgproc.resize(smallFg, fg, src.size(), 0, 0, Imgproc.INTER_NEAREST);
+        smallFg.release();
+
+        Mat kernel = Imgproc.getStructuringElement(Imgproc.MORPH_ELLIPSE, new Size(2 * bandRadius + 1, 2 * bandRadius + 1));
+        Mat dilated = new Mat();
+        Mat eroded = new Mat();
+        Imgproc.dilate(fg, dilated, kernel);
+        Imgproc.erode(fg, eroded, kernel);
+        Mat band = new Mat();
+        Core.subtract(dilated, eroded, band);
+
+        // 3. labels: definite outside the band, probable inside it
+        Mat mask = new Mat(src.size(), CvType.CV_8UC1, new Scalar(Imgproc.GC_BGD));
+        mask.setTo(new Scalar(Imgproc.GC_FGD), eroded);
+        Mat probableFg = new Mat();
+        Core.bitwise_and(band, fg, probableFg);
+        mask.setTo(new Scalar(Imgproc.GC_PR_BGD), band);
+        mask.setTo(new Scalar(Imgproc.GC_PR_FGD), probableFg);
+
+        // 4. refine at full resolution inside the band's bounding box (plus a ring of definite background)
+        Mat bandPoints = new Mat();
+        Core.findNonZero(band, bandPoints);
+        if (!bandPoints.empty() && refineIterations > 0) {
+            Rect box = Imgproc.boundingRect(bandPoints);
+            int pad = 2 * bandRadius;
+            int x0 = Math.max(0, box.x - pad);
+            int y0 = Math.max(0, box.y - pad);
+            int x1 = Math.min(src.cols(), box.x + box.width + pad);
+            int y1 = Math.min(src.rows(), box.y + box.height + pad);
+            Rect roi = new Rect(x0, y0, x1 - x0, y1 - y0);
+
+            Mat roiSrc = src.submat(roi).clone();
+            Mat roiMask = mask.submat(roi).clone();
+            Mat roiBg = new Mat();
+            Mat roiFg = new Mat();
+            try {
+                Imgproc.grabCut(roiSrc, roiMask, new Rect(0, 0, roi.width, roi.height), roiBg, roiFg, refineIterations, Imgproc.GC_INIT_WITH_MASK);
+                Mat target = mask.submat(roi);
+                roiMask.copyTo(target);
+                target.release();
+            } catch (Exception e) {
+                // e.g. no definite background samples in the box; keep the upsampled labels
+                log.warn("Full resolution GrabCut refinement skipped: {}", e.getMessage());
+            } finally {
+                roiSrc.release();
+                roiMask.release();
+                roiBg.release();
+                roiFg.release();
+            }
+        }
+
+        Mat finalMask = grabCutForeground(mask);
+        Mat result = applyAlphaMask(src, finalMask);
+
+        // Clean up
+        bgModel.release();
+        fgModel.release();
+        fg.release();
+        kernel.release();
+        dilated.release();
+        eroded.release();
+        band.release();
+        mask.release();
+        probableFg.release();
+        bandPoints.release();
+        finalMask.release();
+
+        return result;
+    }
+
+    /**
+     * Create mask where 0 and 2 are background, 1 and 3 are foreground
+     */
+    private Mat grabCutForeground(Mat mask) {
+        Mat mask2 = new Mat();
+        Core.compare(mask, new Scalar(Imgproc.GC_PR_FGD), mask2, Core.CMP_EQ);
+        Mat mask3 = new Mat();
+        Core.compare(mask, new Scalar(Imgproc.GC_FGD), mask3, Core.CMP_EQ);
+        Mat finalMask = new Mat();
+        Core.bitwise_or(mask2, mask3, finalMask);
+        mask2.release();
+        mask3.release();
+        return finalMask;
+    }
+
     /**
      * Remove background using contour detection (good for objects with clear edges)
      */
@@ -596,62 +626,6 @@ public class OpenCVRembg implements Rembg {
         return result;
     }
 
-    /**
-     * Convert BufferedImage to OpenCV Mat
-     */
-    private Mat bufferedImageToMat(BufferedImage image) {
-        // Convert to BGR color space for OpenCV
-        BufferedImage convertedImage = new BufferedImage(
-            image.getWidth(),
-            image.getHeight(),
-            BufferedImage.TYPE_3BYTE_BGR
-        );
-        convertedImage.getGraphics().drawImage(image, 0, 0, null);
-
-        byte[] pixels = ((DataBufferByte) convertedImage.getRaster().getDataBuffer()).getData();
-        Mat mat = new Mat(image.getHeight(), image.getWidth(), CvType.CV_8UC3);
-        mat.put(0, 0, pixels);
-
-        return mat;
-    }
-
-    /**
-     * Convert OpenCV Mat to BufferedImage
-     */
-    private BufferedImage matToBufferedImage(Mat mat) {
-        int type = BufferedImage.TYPE_INT_ARGB;
-
-        // Convert Mat to BGRA if needed
-        Mat bgra = new Mat();
-        if (mat.channels() == 3) {
-            Imgproc.cvtColor(mat, bgra, Imgproc.COLOR_BGR2BGRA);
-        } else if (mat.channels() == 4) {
-            bgra = mat.clone();
-        } else {
-            Imgproc.cvtColor(mat, bgra, Imgproc.COLOR_GRAY2BGRA);
-        }
-
-        byte[] data = new byte[bgra.rows() * bgra.cols() * (int) bgra.elemSize()];
-        bgra.get(0, 0, data);
-
-        BufferedImage image = new BufferedImage(bgra.cols(), bgra.rows(), type);
-
-        // Convert BGRA to ARGB for BufferedImage
-        int[] pixels = new int[bgra.cols() * bgra.rows()];
-        for (int i = 0; i < pixels.length; i++) {
-            int idx = i * 4;
-            int b = data[idx] & 0xFF;
-            int g = data[idx + 1] & 0xFF;
-            int r = data[idx + 2] & 0xFF;
-            int a = data[idx + 3] & 0xFF;
-            pixels[i] = (a << 24) | (r << 16) | (g << 8) | b;
-        }
-
-        image.setRGB(0, 0, bgra.cols(), bgra.rows(), pixels, 0, bgra.cols());
-
-        bgra.release();
-        return image;
-    }
 //
 //    public static void main(String[] args) throws Exception {
 //        OpenCVRembg openCVRembg = new OpenCVRembg();
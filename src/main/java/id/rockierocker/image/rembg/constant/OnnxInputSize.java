@@ -1,9 +1,13 @@
 package id.rockierocker.image.rembg.constant;
 
+import java.util.Arrays;
+
 public enum OnnxInputSize {
     INPUT_SIZE_320(320),
     INPUT_SIZE_512(512),
-    INPUT_SIZE_1024(1024);
+    INPUT_SIZE_1024(1024),
+    /* picked per image, see OnnxInputSizeSelector */
+    AUTO(0);
     private OnnxInputSize(Integer inputSize){
         this.inputSize = inputSize;
     }
@@ -16,4 +20,16 @@ public enum OnnxInputSize {
         }
         throw new IllegalArgumentException("Unknown OnnxInputSize: " + name);
     }
+    /* supported model resolutions, ascending */
+    public static OnnxInputSize[] fixedSizes() {
+        return Arrays.stream(values()).filter(p -> p != AUTO).toArray(OnnxInputSize[]::new);
+    }
+    /* supported size closest to the given resolution, the larger one on a tie */
+    public static OnnxInputSize nearest(int size) {
+        OnnxInputSize best = null;
+        for (OnnxInputSize p : fixedSizes()) {
+            if (best == null || Math.abs(p.inputSize - size) <= Math.abs(best.inputSize - size)) best = p;
+        }
+        return best;
+    }
 }
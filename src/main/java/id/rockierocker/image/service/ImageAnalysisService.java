@@ -0,0 +1,79 @@
+package id.rockierocker.image.service;
+
+import id.rockierocker.image.analysis.BackgroundAnalysis;
+import id.rockierocker.image.analysis.BackgroundStatusClassifier;
+import id.rockierocker.image.constant.ResponseCode;
+import id.rockierocker.image.exception.BadRequestException;
+import id.rockierocker.image.exception.InternalServerErrorException;
+import id.rockierocker.image.util.CommonUtil;
+import id.rockierocker.image.util.ImageHeader;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Cheap pre-check for upstream callers: decodes the upload in memory (no temp file, nothing stored)
+ * and classifies its background so they can decide whether the full pipeline is needed.
+ */
+@Slf4j
+@Service
+public class ImageAnalysisService {
+
+    @Value("${image.allowed.extensions:png,jpg,jpeg}")
+    private List<String> allowedExtensions = List.of("png", "jpg", "jpeg");
+    @Value("${image.max-pixels:40000000}")
+    private long maxPixels = 40_000_000L;
+    @Value("${image.analyze.max-samples:1000000}")
+    private long maxSamples = BackgroundStatusClassifier.DEFAULT_MAX_SAMPLES;
+
+    /**
+     * @param step sample step, null or below 1 picks one that reads about image.analyze.max-samples pixels
+     */
+    public BackgroundAnalysis analyze(MultipartFile file, Integer step) {
+        String originalFilename = StringUtils.cleanPath(file.getOriginalFilename() == null ? "" : file.getOriginalFilename());
+        String ext = CommonUtil.getExtensionLower(originalFilename);
+        if (!ext.isEmpty() && !allowedExtensions.contains(ext)) {
+            log.info("Unsupported file extension for analysis: {}", ext);
+            throw new BadRequestException(ResponseCode.EXTENSION_NOT_SUPPORTED);
+        }
+
+        byte[] inputBytes = CommonUtil.getBytes(
+                CommonUtil.getInputStream(file, new InternalServerErrorException(ResponseCode.FAILED_READ_FILE)),
+                new InternalServerErrorException(ResponseCode.FAILED_READ_FILE));
+        ImageHeader header;
+        try {
+            header = ImageHeader.sniff(inputBytes);
+        } catch (IllegalArgumentException e) {
+            log.info("Rejecting input: {}", e.getMessage());
+            throw new BadRequestException(ResponseCode.INVALID_IMAGE_DIMENSIONS);
+        }
+        if (header.pixelCount() > maxPixels) {
+            log.info("Input image {}x{} exceeds {} pixels", header.getWidth(), header.getHeight(), maxPixels);
+            throw new BadRequestException(ResponseCode.IMAGE_TOO_LARGE);
+        }
+
+        BufferedImage image;
+        try {
+            image = ImageIO.read(new ByteArrayInputStream(inputBytes));
+        } catch (Exception e) {
+            log.error("Failed to decode image for analysis", e);
+            throw new InternalServerErrorException(ResponseCode.FAILED_READ_FILE);
+        }
+        if (Objects.isNull(image)) throw new BadRequestException(ResponseCode.EXTENSION_NOT_SUPPORTED);
+
+        int sampleStep = step == null || step < 1
+                ? BackgroundStatusClassifier.autoStep(image.getWidth(), image.getHeight(), maxSamples)
+                : step;
+        BackgroundAnalysis analysis = BackgroundStatusClassifier.classify(image, sampleStep);
+        log.info("Analyzed {}: {}", originalFilename, analysis);
+        return analysis;
+    }
+}
@@ -0,0 +1,281 @@
+package id.rockierocker.image.service;
+
+import id.rockierocker.image.model.RembgConfig;
+import id.rockierocker.image.util.ImageUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Content-addressed cache of background removal results.
+ * <p>
+ * Entries are keyed by SHA-256 over the decoded pixels plus the rembg config code and version
+ * (its last update time), so re-uploads of the same art skip the {@code Rembg} call entirely.
+ * A bounded in-memory tier (LRU by pixel bytes) sits in front of a PNG tier on disk under the
+ * output directory, bounded by total size and file count and pruned least recently used first
+ * (a disk hit touches the file's modification time). Images go in and come out as copies, so
+ * callers may modify what they put or get.
+ */
+@Slf4j
+@Service
+public class RembgCacheService {
+
+    private final long memoryMaxBytes;
+    private final Path diskDirectory;
+    private final long diskMaxBytes;
+    private final long diskMaxEntries;
+
+    private final LinkedHashMap<String, BufferedImage> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryBytes;
+
+    /* approximate totals of the disk tier, recounted from the directory when pruning */
+    private final Object diskLock = new Object();
+    private long diskBytes;
+    private long diskEntries;
+
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public RembgCacheService(
+            OutputDirectoryManagerService outputDirectoryManagerService,
+            @Value("${rembg.cache.memory-max-mb:256}") long memoryMaxMb,
+            @Value("${rembg.cache.disk.enabled:true}") boolean diskEnabled,
+            @Value("${rembg.cache.disk.max-mb:1024}") long diskMaxMb,
+            @Value("${rembg.cache.disk.max-entries:10000}") long diskMaxEntries
+    ) {
+        this.memoryMaxBytes = memoryMaxMb * 1024 * 1024;
+        this.diskMaxBytes = diskMaxMb <= 0 ? Long.MAX_VALUE : diskMaxMb * 1024 * 1024;
+        this.diskMaxEntries = diskMaxEntries <= 0 ? Long.MAX_VALUE : diskMaxEntries;
+        Path dir = null;
+        if (diskEnabled) {
+            dir = outputDirectoryManagerService.getOutputDirectoryPath().resolve("rembg-cache");
+            try {
+                Files.createDirectories(dir);
+            } catch (IOException e) {
+                log.warn("Cannot create rembg cache directory {}, disk tier disabled", dir, e);
+                dir = null;
+            }
+        }
+        this.diskDirectory = dir;
+        if (dir != null) prune();
+    }
+
+    /**
+     * Build the cache key of an input image for the given rembg config.
+     */
+    public String key(BufferedImage image, RembgConfig rembgConfig) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        int w = image.getWidth();
+        int h = image.getHeight();
+        digest.update(ByteBuffer.allocate(8).putInt(w).putInt(h).array());
+
+        int[] row = new int[w];
+        ByteBuffer bytes = ByteBuffer.allocate(w * 4);
+        for (int y = 0; y < h; y++) {
+            image.getRGB(0, y, w, 1, row, 0, w);
+            bytes.clear();
+            bytes.asIntBuffer().put(row);
+            digest.update(bytes.array(), 0, w * 4);
+        }
+
+        String version = String.valueOf(Objects.requireNonNullElse(rembgConfig.getUpdated(), rembgConfig.getCreated()));
+        digest.update((rembgConfig.getConfigCode() + "@" + version).getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Look up a cached result, promoting disk hits into memory.
+     *
+     * @return the cached cutout, or null on a miss
+     */
+    public BufferedImage get(String key) {
+        synchronized (memory) {
+            BufferedImage cached = memory.get(key);
+            if (cached != null) {
+                memoryHits.incrementAndGet();
+                logStats("memory hit");
+                return copy(cached);
+            }
+        }
+        if (diskDirectory != null) {
+            Path file = diskDirectory.resolve(key + ".png");
+            if (Files.isRegularFile(file)) {
+                try {
+                    BufferedImage cached = ImageIO.read(file.toFile());
+                    if (cached != null) {
+                        touch(file);
+                        putMemory(key, copy(cached));
+                        diskHits.incrementAndGet();
+                        logStats("disk hit");
+                        return cached;
+                    }
+                } catch (IOException e) {
+                    log.warn("Failed to read rembg cache file {}", file, e);
+                }
+            }
+        }
+        misses.incrementAndGet();
+        logStats("miss");
+        return null;
+    }
+
+    /**
+     * Store a result in both tiers.
+     */
+    public void put(String key, BufferedImage result) {
+        putMemory(key, copy(result));
+        if (diskDirectory != null) {
+            Path file = diskDirectory.resolve(key + ".png");
+            try {
+                Path tmp = Files.createTempFile(diskDirectory, key, ".tmp");
+                byte[] png = ImageUtil.toBytesPng(result);
+                Files.write(tmp, png);
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                boolean prune;
+                synchronized (diskLock) {
+                    diskBytes += png.length;
+                    diskEntries++;
+                    prune = diskBytes > diskMaxBytes || diskEntries > diskMaxEntries;
+                }
+                if (prune) prune();
+            } catch (IOException e) {
+                log.warn("Failed to write rembg cache file {}", file, e);
+            }
+        }
+    }
+
+    public long getMemoryHits() {
+        return memoryHits.get();
+    }
+
+    public long getDiskHits() {
+        return diskHits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private void putMemory(String key, BufferedImage image) {
+        long size = (long) image.getWidth() * image.getHeight() * 4;
+        if (size > memoryMaxBytes) return;
+        synchronized (memory) {
+            BufferedImage previous = memory.put(key, image);
+            if (previous != null) memoryBytes -= (long) previous.getWidth() * previous.getHeight() * 4;
+            memoryBytes += size;
+
+            Iterator<Map.Entry<String, BufferedImage>> it = memory.entrySet().iterator();
+            while (memoryBytes > memoryMaxBytes && it.hasNext()) {
+                BufferedImage evicted = it.next().getValue();
+                memoryBytes -= (long) evicted.getWidth() * evicted.getHeight() * 4;
+                it.remove();
+            }
+        }
+    }
+
+    /*
+     * Recount the disk tier and delete the least recently used files until it is back under 90% of both
+     * limits, so a full cache is not pruned again on every put. Temp files left by a crash go as well.
+     */
+    private void prune() {
+        synchronized (diskLock) {
+            List<Path> files = new ArrayList<>();
+            Map<Path, FileTime> modified = new HashMap<>();
+            Map<Path, Long> sizes = new HashMap<>();
+            long bytes = 0;
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(diskDirectory)) {
+                for (Path file : stream) {
+                    String name = file.getFileName().toString();
+                    if (name.endsWith(".tmp")) {
+                        deleteQuietly(file);
+                    } else if (name.endsWith(".png")) {
+                        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                        files.add(file);
+                        modified.put(file, attributes.lastModifiedTime());
+                        sizes.put(file, attributes.size());
+                        bytes += attributes.size();
+                    }
+                }
+            } catch (IOException e) {
+                log.warn("Failed to list rembg cache directory {}", diskDirectory, e);
+                return;
+            }
+
+            long entries = files.size();
+            if (bytes > diskMaxBytes || entries > diskMaxEntries) {
+                long targetBytes = diskMaxBytes - diskMaxBytes / 10;
+                long targetEntries = diskMaxEntries - diskMaxEntries / 10;
+                files.sort(Comparator.comparing(modified::get));
+                int deleted = 0;
+                for (Path file : files) {
+                    if (bytes <= targetBytes && entries <= targetEntries) break;
+                    if (deleteQuietly(file)) {
+                        bytes -= sizes.get(file);
+                        entries--;
+                        deleted++;
+                    }
+                }
+                log.info("rembg cache pruned {} files from disk, {} files / {} bytes left", deleted, entries, bytes);
+            }
+            diskBytes = bytes;
+            diskEntries = entries;
+        }
+    }
+
+    private static void touch(Path file) {
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            log.debug("Failed to touch rembg cache file {}", file, e);
+        }
+    }
+
+    private static boolean deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+            return true;
+        } catch (IOException e) {
+            log.warn("Failed to delete rembg cache file {}", file, e);
+            return false;
+        }
+    }
+
+    /* private copy of the pixels, same color model and raster layout */
+    private static BufferedImage copy(BufferedImage image) {
+        return new BufferedImage(image.getColorModel(), image.copyData(null), image.isAlphaPremultiplied(), null);
+    }
+
+    private void logStats(String event) {
+        log.info("rembg cache {} (memory hits={}, disk hits={}, misses={})", event, memoryHits.get(), diskHits.get(), misses.get());
+    }
+}
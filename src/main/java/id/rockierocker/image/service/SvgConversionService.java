@@ -18,7 +18,9 @@ import id.rockierocker.image.repository.PreprocessConfigRepository;
 import id.rockierocker.image.repository.RembgConfigRepository;
 import id.rockierocker.image.repository.VtraceConfigRepository;
 import id.rockierocker.image.util.CommonUtil;
+import id.rockierocker.image.util.ImageHeader;
 import id.rockierocker.image.util.ImageUtil;
+import id.rockierocker.image.util.PngEncoder;
 import id.rockierocker.image.util.ZipUtil;
 import id.rockierocker.image.vectorize.Vectorizer;
 import id.rockierocker.image.vectorize.constant.VTracerColorMode;
@@ -53,6 +55,8 @@ public class SvgConversionService {
     private final OutputDirectoryManagerService outputDirectoryManagerService;
     @Value("${image.allowed.extensions:png,jpg,jpeg}")
     private List<String> allowedExtensions = List.of("png", "jpg", "jpeg");
+    @Value("${image.max-pixels:40000000}")
+    private long maxPixels = 40_000_000L;
 
     private final Vectorizer vectorizerVtrace;
     private final Vectorizer vectorizerInkscape;
@@ -61,6 +65,7 @@ public class SvgConversionService {
     private final PreprocessConfigRepository preprocessConfigRepository;
     private final VtraceConfigRepository vtraceConfigRepository;
     private final RembgConfigRepository rembgConfigRepository;
+    private final RembgCacheService rembgCacheService;
     private final ObjectMapper objectMapper;
 
     /* VTRACE SVG CONVERSION
@@ -128,10 +133,11 @@ public class SvgConversionService {
             String originalFilename = vtraceConversionDto.getOriginalFilename();
             for (BufferedImage bufferedImage : bufferedImages) {
                 vtraceConversionDto.setInputBufferedImage(bufferedImage);
-                byte[] inputBytes = ImageUtil.toBytesPng(bufferedImage, new InternalServerErrorException(ResponseCode.FAILED_READ_FILE));
+                byte[] inputBytes = ImageUtil.toBytesPng(bufferedImage, PngEncoder.FAST, new InternalServerErrorException(ResponseCode.FAILED_READ_FILE));
                 File inputFile = outputDirectoryManagerService.createTempFile("crop-" + index + "-" + vtraceConversionDto.getOriginalFilename() + "-", "." + vtraceConversionDto.getExt(),
                         inputBytes, new InternalServerErrorException(ResponseCode.FAILED_CREATE_TEMP_FILE));
                 vtraceConversionDto.setInputBytes(inputBytes);
+                vtraceConversionDto.setInputHeader(ImageHeader.sniff(inputBytes));
                 vtraceConversionDto.setInputFile(inputFile);
                 vtraceConversionDto.setOriginalFilename(originalFilename+"-"+index);
                 log.info("Processing cropped image {} for VTrace vectorization.", index);
@@ -178,7 +184,7 @@ public class SvgConversionService {
             // do convert to png first
             log.info("Converting input image to PNG format before VTrace vectorization.");
             BufferedImage bufferedImage = ImageUtil.toBufferedImage(inputFile, new InternalServerErrorException(ResponseCode.FAILED_READ_FILE));
-            byte[] pngBytes = ImageUtil.toBytesPng(bufferedImage);
+            byte[] pngBytes = ImageUtil.toBytesPng(bufferedImage, PngEncoder.FAST);
             ext = "png";
             Path pngPath = outputDirectoryManagerService.createTempFile("converted-png-" + originalFilename + "-", "." + ext, pngBytes).toPath();
             addProcessedFile(logImages, originalPath.toPath());
@@ -188,9 +194,9 @@ public class SvgConversionService {
         }
 
         // Remove background only when image has no transparency
-        BufferedImage bufferedImage = removeBackgroundIfNeeded(inputBufferedImage, vtraceConversionDto.getRembgConfigCode());
+        BufferedImage bufferedImage = removeBackgroundIfNeeded(inputBufferedImage, vtraceConversionDto.getInputHeader(), vtraceConversionDto.getRembgConfigCode());
         if (Objects.nonNull(bufferedImage)) {
-            inputBytes = ImageUtil.toBytesPng(bufferedImage, new InternalServerErrorException(ResponseCode.FAILED_READ_FILE));
+            inputBytes = ImageUtil.toBytesPng(bufferedImage, PngEncoder.FAST, new InternalServerErrorException(ResponseCode.FAILED_READ_FILE));
             Path rembgPath = outputDirectoryManagerService.createTempFile("rembg-" + originalFilename + "-", "." + ext, inputBytes).toPath();
             addProcessedFile(logImages, rembgPath);
             inputFile = rembgPath.toFile();
@@ -230,6 +236,20 @@ public class SvgConversionService {
         InputStream inputStream = CommonUtil.getInputStream(file, new InternalServerErrorException(ResponseCode.FAILED_READ_FILE));
         log.info("Creating temporary input file for SVG conversion.");
         byte[] inputBytes = CommonUtil.getBytes(inputStream, new InternalServerErrorException(ResponseCode.FAILED_READ_FILE));
+
+        // header only: reject oversize inputs before anything is decoded
+        ImageHeader inputHeader;
+        try {
+            inputHeader = ImageHeader.sniff(inputBytes);
+        } catch (IllegalArgumentException e) {
+            log.info("Rejecting input: {}", e.getMessage());
+            throw new BadRequestException(ResponseCode.INVALID_IMAGE_DIMENSIONS);
+        }
+        log.info("Input header: {}", inputHeader);
+        if (inputHeader.pixelCount() > maxPixels) {
+            log.info("Input image {}x{} exceeds {} pixels", inputHeader.getWidth(), inputHeader.getHeight(), maxPixels);
+            throw new BadRequestException(ResponseCode.IMAGE_TOO_LARGE);
+        }
         File inputFile = outputDirectoryManagerService.createTempFile("upload-" + originalFilename + "-", "." + ext,
                 inputBytes, new InternalServerErrorException(ResponseCode.FAILED_CREATE_TEMP_FILE));
         log.info("Temporary input file created: {}", inputFile.getAbsolutePath());
@@ -238,24 +258,36 @@ public class SvgConversionService {
         vtraceConversionDto.setExt(ext);
         vtraceConversionDto.setOriginalFilename(originalFilename);
         vtraceConversionDto.setInputBytes(inputBytes);
+        vtraceConversionDto.setInputHeader(inputHeader);
         vtraceConversionDto.setInputFile(inputFile);
         vtraceConversionDto.setInputBufferedImage(inputFileBufferedImage);
         return vtraceConversionDto;
     }
 
     // Extracted helper for background removal to keep main flow linear and readable
-    private BufferedImage removeBackgroundIfNeeded(BufferedImage inputBufferedImage, String configCode) {
+    private BufferedImage removeBackgroundIfNeeded(BufferedImage inputBufferedImage, ImageHeader inputHeader, String configCode) {
 
-        if (ImageUtil.hasTransparency(inputBufferedImage)) {
+        // the header already proves there is no alpha for JPEG and opaque PNG color types
+        boolean alphaPossible = Objects.isNull(inputHeader) || inputHeader.isAlphaPossible();
+        if (alphaPossible && ImageUtil.hasTransparency(inputBufferedImage)) {
             log.info("image has transparency; skipping background removal.");
             return null;
         }
         try {
             RembgConfig rembgConfig = rembgConfigRepository.findFirstByConfigCode(configCode).orElseThrow(() -> new InternalServerErrorException(ResponseCode.REMOVE_BACKGROUND_CONFIG_NOT_FOUND));
+            String cacheKey = rembgCacheService.key(inputBufferedImage, rembgConfig);
+            BufferedImage cached = rembgCacheService.get(cacheKey);
+            if (Objects.nonNull(cached)) {
+                log.info("background removal result found in cache; skipping {}.", rembgConfig.getProcess());
+                return cached;
+            }
             Class<Rembg> rembgClass = (Class<Rembg>) RembgEnum.fromString(rembgConfig.getProcess()).rembgClass;
             Rembg rembg = CommonUtil.getInstance(rembgClass);
             rembg.configMap(rembgConfig.getConfig());
-            return rembg.removeBackground(inputBufferedImage);
+            BufferedImage result = rembg.removeBackground(inputBufferedImage);
+            log.info("background removed using {}", rembg.getName());
+            if (Objects.nonNull(result)) rembgCacheService.put(cacheKey, result);
+            return result;
         } catch (Exception e) {
             log.warn("Failed to remove background", e);
             throw new InternalServerErrorException(ResponseCode.FAILED_TO_REMOVE_BACKGROUND);
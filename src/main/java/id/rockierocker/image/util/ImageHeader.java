@@ -0,0 +1,138 @@
+package id.rockierocker.image.util;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Format, dimensions and alpha capability read from the first bytes of an encoded image,
+ * without decoding any pixel data.
+ * <p>
+ * PNG: IHDR gives the size and color type (4 and 6 carry alpha); for other color types a
+ * {@code tRNS} chunk before the first IDAT is the only way to get transparency.
+ * JPEG: the SOFn marker gives the size, JPEG has no alpha.
+ * Anything else is reported as {@link #UNKNOWN} with {@code alphaPossible = true}.
+ */
+@Getter
+@Builder
+@ToString
+public class ImageHeader {
+
+    public static final String PNG = "png";
+    public static final String JPEG = "jpeg";
+    public static final String UNKNOWN = "unknown";
+
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+    private final String format;
+    /* -1 when unknown */
+    private final int width;
+    private final int height;
+    /* false only when the header proves there is no alpha channel and no transparent color */
+    private final boolean alphaPossible;
+
+    public boolean isKnown() {
+        return !UNKNOWN.equals(format);
+    }
+
+    public long pixelCount() {
+        return width < 0 || height < 0 ? -1 : (long) width * height;
+    }
+
+    /**
+     * @throws IllegalArgumentException when a PNG header declares a width or height outside 1..2^31-1
+     */
+    public static ImageHeader sniff(byte[] bytes) {
+        if (startsWith(bytes, PNG_SIGNATURE)) {
+            ImageHeader header = sniffPng(bytes);
+            if (header != null) return header;
+        } else if (bytes.length > 3 && (bytes[0] & 0xFF) == 0xFF && (bytes[1] & 0xFF) == 0xD8) {
+            ImageHeader header = sniffJpeg(bytes);
+            if (header != null) return header;
+        }
+        return unknown();
+    }
+
+    private static ImageHeader sniffPng(byte[] b) {
+        // signature, then IHDR must be the first chunk: length(4) type(4) width(4) height(4) depth(1) colorType(1)
+        if (b.length < 8 + 8 + 13 || !chunkType(b, 12, "IHDR")) return null;
+        int width = dimension(readInt(b, 16) & 0xFFFFFFFFL);
+        int height = dimension(readInt(b, 20) & 0xFFFFFFFFL);
+        int colorType = b[25] & 0xFF;
+        boolean alpha = colorType == 4 || colorType == 6;
+
+        int offset = 8;
+        while (!alpha && offset + 8 <= b.length) {
+            long length = readInt(b, offset) & 0xFFFFFFFFL;
+            if (chunkType(b, offset + 4, "tRNS")) alpha = true;
+            if (chunkType(b, offset + 4, "IDAT") || chunkType(b, offset + 4, "IEND")) break;
+            long next = offset + 12L + length; // length + type + data + crc
+            if (next + 8 > b.length) {
+                // truncated before the first IDAT, a tRNS chunk cannot be ruled out
+                alpha = true;
+                break;
+            }
+            offset = (int) next;
+        }
+        return ImageHeader.builder().format(PNG).width(width).height(height).alphaPossible(alpha).build();
+    }
+
+    /* PNG allows 1..2^31-1; anything else would turn pixelCount negative and slip past size limits */
+    private static int dimension(long value) {
+        if (value <= 0 || value > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid PNG dimension: " + value);
+        }
+        return (int) value;
+    }
+
+    private static ImageHeader sniffJpeg(byte[] b) {
+        int offset = 2;
+        while (offset + 4 <= b.length) {
+            if ((b[offset] & 0xFF) != 0xFF) return null;
+            int marker = b[offset + 1] & 0xFF;
+            if (marker == 0xFF) { // fill byte
+                offset++;
+                continue;
+            }
+            if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD8)) { // no length
+                offset += 2;
+                continue;
+            }
+            if (marker == 0xD9 || marker == 0xDA) return null; // EOI / SOS before any frame header
+            int length = ((b[offset + 2] & 0xFF) << 8) | (b[offset + 3] & 0xFF);
+            boolean sof = marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC;
+            if (sof && offset + 9 <= b.length) {
+                int height = ((b[offset + 5] & 0xFF) << 8) | (b[offset + 6] & 0xFF);
+                int width = ((b[offset + 7] & 0xFF) << 8) | (b[offset + 8] & 0xFF);
+                return ImageHeader.builder().format(JPEG).width(width).height(height).alphaPossible(false).build();
+            }
+            offset += 2 + length;
+        }
+        return null;
+    }
+
+    private static ImageHeader unknown() {
+        return ImageHeader.builder().format(UNKNOWN).width(-1).height(-1).alphaPossible(true).build();
+    }
+
+    private static boolean startsWith(byte[] bytes, byte[] prefix) {
+        if (bytes == null || bytes.length < prefix.length) return false;
+        for (int i = 0; i < prefix.length; i++) {
+            if (bytes[i] != prefix[i]) return false;
+        }
+        return true;
+    }
+
+    private static boolean chunkType(byte[] b, int offset, String type) {
+        if (offset + 4 > b.length) return false;
+        for (int i = 0; i < 4; i++) {
+            if (b[offset + i] != type.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private static int readInt(byte[] b, int offset) {
+        return ((b[offset] & 0xFF) << 24) | ((b[offset + 1] & 0xFF) << 16)
+                | ((b[offset + 2] & 0xFF) << 8) | (b[offset + 3] & 0xFF);
+    }
+}
@@ -1,19 +1,15 @@
 package id.rockierocker.image.util;
 
+import id.rockierocker.image.analysis.BackgroundStatusClassifier;
 import lombok.extern.slf4j.Slf4j;
 
 import javax.imageio.ImageIO;
-import javax.imageio.ImageWriteParam;
-import javax.imageio.ImageWriter;
-import javax.imageio.stream.ImageOutputStream;
-import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -22,7 +18,10 @@ public class ImageUtil {
 
     /**
      * Resize a BufferedImage to the given width and height with high quality.
-     * Preserves transparency if present in the original image.
+     * Uses {@link Resampler} with premultiplied alpha, so transparency is preserved: AREA when neither
+     * axis grows, so large downscales do not alias, and Lanczos3 when either axis grows. Call
+     * {@link Resampler#resize(BufferedImage, int, int, Resampler.Filter)} to pick another filter.
+     * The result is TYPE_INT_ARGB, or TYPE_INT_RGB for opaque images.
      *
      * @param img The original image to be resized.
      * @param w   The target width.
@@ -30,86 +29,72 @@ public class ImageUtil {
      * @return A new BufferedImage that is the resized version of the original image.
      */
     public static BufferedImage resize(BufferedImage img, int w, int h) {
-        // Preserve image type, especially for transparency
-        int imageType = img.getType();
-        if (imageType == BufferedImage.TYPE_CUSTOM) {
-            // Use appropriate type based on alpha channel
-            imageType = img.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
-        }
-
-        BufferedImage out = new BufferedImage(w, h, imageType);
-        Graphics2D g = out.createGraphics();
-
-        // Use high-quality rendering hints
-        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
-        g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
-        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-        g.setRenderingHint(RenderingHints.KEY_COLOR_RENDERING, RenderingHints.VALUE_COLOR_RENDER_QUALITY);
-
-        g.drawImage(img, 0, 0, w, h, null);
-        g.dispose();
-        return out;
+        return Resampler.resize(img, w, h);
     }
 
     /**
      * Convert a BufferedImage to a byte array.
+     * Images with alpha are written as PNG with {@link PngEncoder#FAST}, meant for intermediate files.
      *
      * @param bufferedImage The BufferedImage to be converted.
      * @return A byte array representing the image data.
      * @throws IOException If an error occurs during writing.
      */
     public static byte[] toBytes(BufferedImage bufferedImage) throws IOException {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
         // If the image has an alpha channel, write as PNG to preserve transparency.
-        String format = bufferedImage.getColorModel().hasAlpha() ? "png" : "jpg";
-        ImageIO.write(bufferedImage, format, baos);
+        if (bufferedImage.getColorModel().hasAlpha()) {
+            return PngEncoder.FAST.encode(bufferedImage);
+        }
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ImageIO.write(bufferedImage, "jpg", baos);
         return baos.toByteArray();
     }
 
     /**
-     * Convert a BufferedImage to a PNG byte array with high quality settings.
+     * Convert a BufferedImage to a PNG byte array using {@link PngEncoder#DEFAULT}.
      *
      * @param bufferedImage The BufferedImage to be converted.
      * @return A byte array representing the image data.
      * @throws IOException If an error occurs during writing.
      */
     public static byte[] toBytesPng(BufferedImage bufferedImage) throws IOException {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-
-        // Use ImageWriter for better control over PNG quality
-        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("png");
-        if (!writers.hasNext()) {
-            // Fallback to basic write
-            ImageIO.write(bufferedImage, "png", baos);
-            return baos.toByteArray();
-        }
-
-        ImageWriter writer = writers.next();
-        try (ImageOutputStream ios = ImageIO.createImageOutputStream(baos)) {
-            writer.setOutput(ios);
-
-            ImageWriteParam param = writer.getDefaultWriteParam();
-            // PNG doesn't use compression mode in the same way as JPEG
-            // But we can ensure the best quality output
-
-            writer.write(null, new javax.imageio.IIOImage(bufferedImage, null, null), param);
-            writer.dispose();
-        }
-
-        return baos.toByteArray();
+        return toBytesPng(bufferedImage, PngEncoder.DEFAULT);
     }
 
+    /**
+     * Convert a BufferedImage to a PNG byte array with the given encoder settings.
+     *
+     * @param bufferedImage The BufferedImage to be converted.
+     * @param encoder       Compression level and filter preset, e.g. {@link PngEncoder#FAST} for intermediate files.
+     * @return A byte array representing the image data.
+     * @throws IOException If an error occurs during writing.
+     */
+    public static byte[] toBytesPng(BufferedImage bufferedImage, PngEncoder encoder) throws IOException {
+        return encoder.encode(bufferedImage);
+    }
 
     /**
-     * Convert a BufferedImage to a PNG byte array with high quality settings.
+     * Convert a BufferedImage to a PNG byte array using {@link PngEncoder#DEFAULT}.
      *
      * @param bufferedImage The BufferedImage to be converted.
      * @param runtimeException The exception to throw if an error occurs.
      * @return A byte array representing the image data.
      */
     public static byte[] toBytesPng(BufferedImage bufferedImage, RuntimeException runtimeException) {
+        return toBytesPng(bufferedImage, PngEncoder.DEFAULT, runtimeException);
+    }
+
+    /**
+     * Convert a BufferedImage to a PNG byte array with the given encoder settings.
+     *
+     * @param bufferedImage The BufferedImage to be converted.
+     * @param encoder       Compression level and filter preset.
+     * @param runtimeException The exception to throw if an error occurs.
+     * @return A byte array representing the image data.
+     */
+    public static byte[] toBytesPng(BufferedImage bufferedImage, PngEncoder encoder, RuntimeException runtimeException) {
         try {
-            return toBytesPng(bufferedImage);
+            return toBytesPng(bufferedImage, encoder);
         } catch (Exception e){
             log.error("Error converting BufferedImage to PNG byte array {}", e.getMessage(), e);
             throw runtimeException;
@@ -313,19 +298,12 @@ public class ImageUtil {
         return outputImage;
     }
 
+    /**
+     * True when any pixel has alpha below 250. Scans the raw data buffer in parallel row bands with early exit,
+     * see {@link TransparencyDetectorUtil#anyAlphaBelow(BufferedImage, int)}.
+     */
     public static boolean hasTransparency(BufferedImage img) {
-        if (!img.getColorModel().hasAlpha()) return false;
-
-        int w = img.getWidth();
-        int h = img.getHeight();
-
-        for (int y = 0; y < h; y++) {
-            for (int x = 0; x < w; x++) {
-                int a = (img.getRGB(x, y) >> 24) & 0xff;
-                if (a < 250) return true;
-            }
-        }
-        return false;
+        return TransparencyDetectorUtil.anyAlphaBelow(img, 250);
     }
 
     public static double edgeSharpnessScore(BufferedImage img) {
@@ -372,24 +350,12 @@ public class ImageUtil {
         return var / colors.size();
     }
 
+    /**
+     * Background status name, see {@link BackgroundStatusClassifier}: the transparency, edge and border
+     * signals above are computed in one pass instead of three.
+     */
     public static String detectBackgroundStatus(BufferedImage img) {
-        boolean transparent = hasTransparency(img);
-        double edge = edgeSharpnessScore(img);
-        double borderVar = borderColorVariance(img);
-
-        if (transparent && edge > 10) {
-            return "BACKGROUND_REMOVED";
-        }
-
-        if (!transparent && borderVar < 10 && edge > 10) {
-            return "SOLID_BACKGROUND_NOT_REMOVED";
-        }
-
-        if (edge < 5) {
-            return "BLUR_BACKGROUND";
-        }
-
-        return "DIRTY_OR_PARTIAL_BACKGROUND";
+        return BackgroundStatusClassifier.classify(img).getStatus().name();
     }
 
     public static BufferedImage toBufferedImage(File file, RuntimeException runtimeException) {
@@ -0,0 +1,198 @@
+package id.rockierocker.image.util;
+
+import nu.pattern.OpenCV;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfInt;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.List;
+
+/**
+ * One native BGRA (CV_8UC4) allocation shared by every pipeline stage.
+ * <p>
+ * The image crosses the Java/native boundary once on the way in ({@link #fromBufferedImage})
+ * and once on the way out ({@link #toBufferedImage()}); channel reordering is done natively
+ * instead of per-pixel swizzle loops. In between it is exposed as an OpenCV {@link Mat}
+ * ({@link #mat()}, no copy) and as an ONNX input source ({@link #fillTensor}).
+ */
+public class NativeImageBuffer implements AutoCloseable {
+
+    static {
+        // Load OpenCV native binaries (org.openpnp:opencv)
+        OpenCV.loadLocally();
+    }
+
+    /* mixChannels pairs: ABGR (TYPE_4BYTE_ABGR byte order) <-> BGRA (OpenCV order) */
+    private static final MatOfInt ABGR_TO_BGRA = new MatOfInt(0, 3, 1, 0, 2, 1, 3, 2);
+    private static final MatOfInt BGRA_TO_ABGR = new MatOfInt(3, 0, 0, 1, 1, 2, 2, 3);
+
+    private final Mat bgra;
+
+    private NativeImageBuffer(Mat bgra) {
+        this.bgra = bgra;
+    }
+
+    /**
+     * Copy a BufferedImage into a new native BGRA buffer.
+     */
+    public static NativeImageBuffer fromBufferedImage(BufferedImage image) {
+        int w = image.getWidth();
+        int h = image.getHeight();
+        Mat bgra = new Mat(h, w, CvType.CV_8UC4);
+        BufferedImage source = packed(image);
+
+        switch (source.getType()) {
+            case BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_INT_RGB -> {
+                // a little-endian ARGB int is laid out as B, G, R, A bytes
+                int[] pixels = ((DataBufferInt) source.getRaster().getDataBuffer()).getData();
+                ByteBuffer bytes = ByteBuffer.allocate(pixels.length * 4).order(ByteOrder.LITTLE_ENDIAN);
+                bytes.asIntBuffer().put(pixels);
+                bgra.put(0, 0, bytes.array());
+                if (source.getType() == BufferedImage.TYPE_INT_RGB) {
+                    // saturating add forces alpha to 255 without touching B, G, R
+                    Core.add(bgra, new Scalar(0, 0, 0, 255), bgra);
+                }
+            }
+            case BufferedImage.TYPE_3BYTE_BGR -> {
+                Mat bgr = new Mat(h, w, CvType.CV_8UC3);
+                bgr.put(0, 0, ((DataBufferByte) source.getRaster().getDataBuffer()).getData());
+                Imgproc.cvtColor(bgr, bgra, Imgproc.COLOR_BGR2BGRA);
+                bgr.release();
+            }
+            default -> {
+                // TYPE_4BYTE_ABGR
+                Mat abgr = new Mat(h, w, CvType.CV_8UC4);
+                abgr.put(0, 0, ((DataBufferByte) source.getRaster().getDataBuffer()).getData());
+                Core.mixChannels(List.of(abgr), List.of(bgra), ABGR_TO_BGRA);
+                abgr.release();
+            }
+        }
+        return new NativeImageBuffer(bgra);
+    }
+
+    /**
+     * Take ownership of an OpenCV Mat (BGRA, BGR or gray). A BGRA Mat is used as-is.
+     */
+    public static NativeImageBuffer wrap(Mat mat) {
+        if (mat.channels() == 4) return new NativeImageBuffer(mat);
+        Mat bgra = new Mat();
+        Imgproc.cvtColor(mat, bgra, mat.channels() == 3 ? Imgproc.COLOR_BGR2BGRA : Imgproc.COLOR_GRAY2BGRA);
+        mat.release();
+        return new NativeImageBuffer(bgra);
+    }
+
+    /** The BGRA Mat itself, shared with this buffer */
+    public Mat mat() {
+        return bgra;
+    }
+
+    public int width() {
+        return bgra.cols();
+    }
+
+    public int height() {
+        return bgra.rows();
+    }
+
+    /** New BGR Mat converted natively; the caller releases it */
+    public Mat bgr() {
+        Mat bgr = new Mat();
+        Imgproc.cvtColor(bgra, bgr, Imgproc.COLOR_BGRA2BGR);
+        return bgr;
+    }
+
+    /** New single channel luma Mat converted natively; the caller releases it */
+    public Mat gray() {
+        Mat gray = new Mat();
+        Imgproc.cvtColor(bgra, gray, Imgproc.COLOR_BGRA2GRAY);
+        return gray;
+    }
+
+    /** View of a region, sharing this buffer's memory */
+    public NativeImageBuffer region(Rect rect) {
+        return new NativeImageBuffer(bgra.submat(rect));
+    }
+
+    /** Replace the alpha channel with a CV_8UC1 mask of the same size */
+    public void setAlpha(Mat alpha) {
+        Core.mixChannels(List.of(alpha), List.of(bgra), new MatOfInt(0, 3));
+    }
+
+    /**
+     * Resize natively to W x H and write the normalized {@code [1, 3, H, W]} RGB planes
+     * ((v / 255 - 0.5) / 0.5) into the tensor buffer, starting at index 0.
+     */
+    public void fillTensor(FloatBuffer target, int W, int H) {
+        Mat resized = new Mat();
+        Mat normalized = new Mat();
+        Imgproc.resize(bgra, resized, new Size(W, H), 0, 0, Imgproc.INTER_AREA);
+        resized.convertTo(normalized, CvType.CV_32FC4, 2.0 / 255.0, -1.0);
+        resized.release();
+
+        float[] pixelRow = new float[W * 4];
+        float[] r = new float[W];
+        float[] g = new float[W];
+        float[] b = new float[W];
+        int plane = W * H;
+        for (int y = 0; y < H; y++) {
+            normalized.get(y, 0, pixelRow);
+            for (int x = 0, i = 0; x < W; x++, i += 4) {
+                b[x] = pixelRow[i];
+                g[x] = pixelRow[i + 1];
+                r[x] = pixelRow[i + 2];
+            }
+            int idx = y * W;
+            target.put(idx, r);
+            target.put(plane + idx, g);
+            target.put(2 * plane + idx, b);
+        }
+        normalized.release();
+    }
+
+    /**
+     * Copy out into a TYPE_4BYTE_ABGR BufferedImage; channels are reordered natively and the
+     * bytes land directly in the image's raster.
+     */
+    public BufferedImage toBufferedImage() {
+        int w = bgra.cols();
+        int h = bgra.rows();
+        Mat abgr = new Mat(h, w, CvType.CV_8UC4);
+        Core.mixChannels(List.of(bgra), List.of(abgr), BGRA_TO_ABGR);
+
+        BufferedImage image = new BufferedImage(w, h, BufferedImage.TYPE_4BYTE_ABGR);
+        abgr.get(0, 0, ((DataBufferByte) image.getRaster().getDataBuffer()).getData());
+        abgr.release();
+        return image;
+    }
+
+    @Override
+    public void close() {
+        bgra.release();
+    }
+
+    /* Raster layouts read directly; anything else (custom, indexed, gray, premultiplied) is redrawn once */
+    private static BufferedImage packed(BufferedImage image) {
+        switch (image.getType()) {
+            case BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_INT_RGB,
+                    BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_4BYTE_ABGR -> {
+                if (image.getRaster().getParent() == null) return image;
+            }
+            default -> {
+            }
+        }
+        BufferedImage converted = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_4BYTE_ABGR);
+        converted.getGraphics().drawImage(image, 0, 0, null);
+        return converted;
+    }
+}
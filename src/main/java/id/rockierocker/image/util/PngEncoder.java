@@ -0,0 +1,285 @@
+package id.rockierocker.image.util;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * 8-bit RGB / RGBA PNG writer with a per-call compression level and filter strategy.
+ * <p>
+ * Large images are filtered in parallel and deflated pigz-style: the filtered scanlines are cut
+ * into {@value #CHUNK_SIZE} byte chunks compressed independently on the common pool, each primed
+ * with the previous 32 KiB as dictionary and ended with a sync flush, so the concatenated output
+ * is one valid zlib stream. Every chunk goes out as its own IDAT.
+ * <p>
+ * {@link #FAST} (level 1, no filtering) is meant for intermediate files that are read back
+ * within the same request; {@link #DEFAULT} for results that are stored or returned.
+ */
+public class PngEncoder {
+
+    public enum Filter {NONE, SUB, UP, AVERAGE, PAETH, ADAPTIVE}
+
+    public static final PngEncoder FAST = new PngEncoder(1, Filter.NONE);
+    public static final PngEncoder DEFAULT = new PngEncoder(4, Filter.PAETH);
+    public static final PngEncoder SMALLEST = new PngEncoder(9, Filter.ADAPTIVE);
+
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final int CHUNK_SIZE = 128 * 1024;
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+    /* below this much filtered data a single deflater is faster than forking */
+    private static final int PARALLEL_MIN_BYTES = 4 * CHUNK_SIZE;
+    private static final boolean PARALLEL = ForkJoinPool.getCommonPoolParallelism() > 1;
+
+    private final int level;
+    private final Filter filter;
+
+    public PngEncoder(int level, Filter filter) {
+        if (level < 0 || level > 9) throw new IllegalArgumentException("Invalid compression level: " + level);
+        this.level = level;
+        this.filter = filter;
+    }
+
+    public byte[] encode(BufferedImage image) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(image.getWidth() * image.getHeight() + 1024);
+        encode(image, out);
+        return out.toByteArray();
+    }
+
+    public void encode(BufferedImage image, OutputStream out) throws IOException {
+        int w = image.getWidth();
+        int h = image.getHeight();
+        boolean alpha = image.getColorModel().hasAlpha();
+        int bpp = alpha ? 4 : 3;
+
+        byte[] raw = rawPixels(image, bpp);
+        byte[] filtered = filter(raw, w, h, bpp);
+
+        out.write(SIGNATURE);
+        byte[] ihdr = new byte[13];
+        writeInt(ihdr, 0, w);
+        writeInt(ihdr, 4, h);
+        ihdr[8] = 8;                           // bit depth
+        ihdr[9] = (byte) (alpha ? 6 : 2);      // RGBA / RGB
+        writeChunk(out, "IHDR", ihdr, 0, ihdr.length);
+
+        // zlib header (CMF, FLG with the level hint), deflate chunks, adler32 trailer
+        int flevel = level <= 1 ? 0 : level <= 5 ? 1 : level == 6 ? 2 : 3;
+        int cmf = 0x78;
+        int flg = flevel << 6;
+        flg += 31 - ((cmf << 8) + flg) % 31;
+        byte[] zlibHeader = {(byte) cmf, (byte) flg};
+        writeChunk(out, "IDAT", zlibHeader, 0, 2);
+
+        for (byte[] compressed : deflate(filtered)) {
+            writeChunk(out, "IDAT", compressed, 0, compressed.length);
+        }
+
+        Adler32 adler = new Adler32();
+        adler.update(filtered, 0, filtered.length);
+        byte[] trailer = new byte[4];
+        writeInt(trailer, 0, (int) adler.getValue());
+        writeChunk(out, "IDAT", trailer, 0, 4);
+
+        writeChunk(out, "IEND", new byte[0], 0, 0);
+    }
+
+    /* RGB(A) bytes per scanline, straight from the data buffer for the packed layouts */
+    private static byte[] rawPixels(BufferedImage image, int bpp) {
+        int w = image.getWidth();
+        int h = image.getHeight();
+        byte[] raw = new byte[w * h * bpp];
+        boolean direct = image.getRaster().getParent() == null;
+        int type = image.getType();
+
+        rows(h, w).forEach(y -> {
+            int o = y * w * bpp;
+            if (direct && (type == BufferedImage.TYPE_INT_ARGB || type == BufferedImage.TYPE_INT_RGB)) {
+                int[] data = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+                for (int i = y * w, end = i + w; i < end; i++) o = putArgb(raw, o, data[i], bpp);
+            } else if (direct && type == BufferedImage.TYPE_4BYTE_ABGR && bpp == 4) {
+                byte[] data = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+                for (int i = y * w * 4, end = i + w * 4; i < end; i += 4) {
+                    raw[o++] = data[i + 3];
+                    raw[o++] = data[i + 2];
+                    raw[o++] = data[i + 1];
+                    raw[o++] = data[i];
+                }
+            } else if (direct && type == BufferedImage.TYPE_3BYTE_BGR) {
+                byte[] data = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+                for (int i = y * w * 3, end = i + w * 3; i < end; i += 3) {
+                    raw[o++] = data[i + 2];
+                    raw[o++] = data[i + 1];
+                    raw[o++] = data[i];
+                }
+            } else {
+                int[] row = new int[w];
+                image.getRGB(0, y, w, 1, row, 0, w);
+                for (int argb : row) o = putArgb(raw, o, argb, bpp);
+            }
+        });
+        return raw;
+    }
+
+    private static int putArgb(byte[] raw, int o, int argb, int bpp) {
+        raw[o++] = (byte) (argb >> 16);
+        raw[o++] = (byte) (argb >> 8);
+        raw[o++] = (byte) argb;
+        if (bpp == 4) raw[o++] = (byte) (argb >>> 24);
+        return o;
+    }
+
+    /* One filter-type byte plus the filtered scanline per row; rows only read the raw previous row */
+    private byte[] filter(byte[] raw, int w, int h, int bpp) {
+        int stride = w * bpp;
+        byte[] filtered = new byte[h * (stride + 1)];
+        rows(h, w).forEach(y -> {
+            int out = y * (stride + 1);
+            int cur = y * stride;
+            int prev = y == 0 ? -1 : cur - stride;
+            if (filter != Filter.ADAPTIVE) {
+                filterRow(filter, raw, cur, prev, stride, bpp, filtered, out);
+                return;
+            }
+            // minimum sum of absolute differences heuristic (libpng)
+            byte[] candidate = new byte[stride + 1];
+            long best = Long.MAX_VALUE;
+            for (Filter f : new Filter[]{Filter.NONE, Filter.SUB, Filter.UP, Filter.AVERAGE, Filter.PAETH}) {
+                filterRow(f, raw, cur, prev, stride, bpp, candidate, 0);
+                long sum = 0;
+                for (int i = 1; i <= stride; i++) sum += Math.abs(candidate[i]);
+                if (sum < best) {
+                    best = sum;
+                    System.arraycopy(candidate, 0, filtered, out, stride + 1);
+                }
+            }
+        });
+        return filtered;
+    }
+
+    private static void filterRow(Filter f, byte[] raw, int cur, int prev, int stride, int bpp, byte[] dst, int out) {
+        dst[out++] = (byte) f.ordinal();
+        if (f == Filter.NONE || (prev < 0 && f == Filter.UP)) {
+            System.arraycopy(raw, cur, dst, out, stride);
+            if (f == Filter.UP) dst[out - 1] = (byte) Filter.NONE.ordinal();
+            return;
+        }
+        switch (f) {
+            case SUB -> {
+                System.arraycopy(raw, cur, dst, out, bpp);
+                for (int i = bpp; i < stride; i++) dst[out + i] = (byte) (raw[cur + i] - raw[cur + i - bpp]);
+            }
+            case UP -> {
+                for (int i = 0; i < stride; i++) dst[out + i] = (byte) (raw[cur + i] - raw[prev + i]);
+            }
+            case AVERAGE -> {
+                for (int i = 0; i < stride; i++) {
+                    int a = i >= bpp ? raw[cur + i - bpp] & 0xFF : 0;
+                    int b = prev >= 0 ? raw[prev + i] & 0xFF : 0;
+                    dst[out + i] = (byte) (raw[cur + i] - ((a + b) >>> 1));
+                }
+            }
+            default -> {
+                // PAETH; on the first row b = c = 0 and it degenerates to SUB
+                if (prev < 0) {
+                    System.arraycopy(raw, cur, dst, out, bpp);
+                    for (int i = bpp; i < stride; i++) dst[out + i] = (byte) (raw[cur + i] - raw[cur + i - bpp]);
+                    return;
+                }
+                for (int i = 0; i < bpp; i++) dst[out + i] = (byte) (raw[cur + i] - raw[prev + i]);
+                for (int i = bpp; i < stride; i++) {
+                    int a = raw[cur + i - bpp] & 0xFF;
+                    int b = raw[prev + i] & 0xFF;
+                    int c = raw[prev + i - bpp] & 0xFF;
+                    dst[out + i] = (byte) (raw[cur + i] - paeth(a, b, c));
+                }
+            }
+        }
+    }
+
+    private static int paeth(int a, int b, int c) {
+        int p = a + b - c;
+        int pa = Math.abs(p - a);
+        int pb = Math.abs(p - b);
+        int pc = Math.abs(p - c);
+        if (pa <= pb && pa <= pc) return a;
+        return pb <= pc ? b : c;
+    }
+
+    /* Raw deflate chunks that concatenate into one stream; parallel above PARALLEL_MIN_BYTES */
+    private List<byte[]> deflate(byte[] data) {
+        if (!PARALLEL || data.length < PARALLEL_MIN_BYTES) {
+            return List.of(deflateChunk(data, 0, data.length, true));
+        }
+        List<CompletableFuture<byte[]>> futures = new ArrayList<>();
+        for (int start = 0; start < data.length; start += CHUNK_SIZE) {
+            int from = start;
+            int to = Math.min(data.length, start + CHUNK_SIZE);
+            futures.add(CompletableFuture.supplyAsync(() -> deflateChunk(data, from, to, to == data.length)));
+        }
+        List<byte[]> chunks = new ArrayList<>(futures.size());
+        for (CompletableFuture<byte[]> future : futures) chunks.add(future.join());
+        return chunks;
+    }
+
+    private byte[] deflateChunk(byte[] data, int from, int to, boolean last) {
+        Deflater deflater = new Deflater(level, true);
+        if (filter != Filter.NONE) deflater.setStrategy(Deflater.FILTERED);
+        try {
+            if (from > 0) {
+                int dictionaryStart = Math.max(0, from - DICTIONARY_SIZE);
+                deflater.setDictionary(data, dictionaryStart, from - dictionaryStart);
+            }
+            deflater.setInput(data, from, to - from);
+            if (last) deflater.finish();
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, (to - from) / 2));
+            byte[] buffer = new byte[16 * 1024];
+            int flush = last ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH;
+            while (true) {
+                int n = deflater.deflate(buffer, 0, buffer.length, flush);
+                out.write(buffer, 0, n);
+                if (last ? deflater.finished() : n < buffer.length && deflater.needsInput()) break;
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static IntStream rows(int h, int w) {
+        IntStream rows = IntStream.range(0, h);
+        return PARALLEL && (long) w * h * 4 >= PARALLEL_MIN_BYTES ? rows.parallel() : rows;
+    }
+
+    private static void writeChunk(OutputStream out, String type, byte[] data, int offset, int length) throws IOException {
+        byte[] header = new byte[8];
+        writeInt(header, 0, length);
+        for (int i = 0; i < 4; i++) header[4 + i] = (byte) type.charAt(i);
+        CRC32 crc = new CRC32();
+        crc.update(header, 4, 4);
+        crc.update(data, offset, length);
+        byte[] trailer = new byte[4];
+        writeInt(trailer, 0, (int) crc.getValue());
+        out.write(header);
+        out.write(data, offset, length);
+        out.write(trailer);
+    }
+
+    private static void writeInt(byte[] b, int offset, int value) {
+        b[offset] = (byte) (value >>> 24);
+        b[offset + 1] = (byte) (value >>> 16);
+        b[offset + 2] = (byte) (value >>> 8);
+        b[offset + 3] = (byte) value;
+    }
+}
@@ -0,0 +1,228 @@
+package id.rockierocker.image.util;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Separable image resampler: a horizontal pass into a float buffer of {@code dstW x srcH},
+ * then a vertical pass into the destination. Filter weights are computed once per axis into
+ * tables, both passes run in row bands on the common fork-join pool, and ARGB is filtered
+ * premultiplied so transparent pixels do not bleed their color into the edges.
+ * <p>
+ * When downscaling the kernel is stretched by the scale factor, so every source pixel
+ * contributes and large ratios do not alias the way Graphics2D bicubic does beyond 2x.
+ */
+public class Resampler {
+
+    public enum Filter {
+        /* sinc windowed by sinc, sharp, slight ringing */
+        LANCZOS3(3.0),
+        /* Mitchell-Netravali B = C = 1/3, soft, no visible ringing */
+        MITCHELL(2.0),
+        /* exact pixel coverage when downscaling, bilinear when upscaling */
+        AREA(1.0);
+
+        final double support;
+
+        Filter(double support) {
+            this.support = support;
+        }
+
+        double weight(double x) {
+            x = Math.abs(x);
+            switch (this) {
+                case LANCZOS3:
+                    if (x < 1e-8) return 1.0;
+                    if (x >= 3.0) return 0.0;
+                    double px = Math.PI * x;
+                    return 3.0 * Math.sin(px) * Math.sin(px / 3.0) / (px * px);
+                case MITCHELL:
+                    double b = 1.0 / 3.0, c = 1.0 / 3.0;
+                    if (x < 1.0)
+                        return ((12 - 9 * b - 6 * c) * x * x * x + (-18 + 12 * b + 6 * c) * x * x + (6 - 2 * b)) / 6.0;
+                    if (x < 2.0)
+                        return ((-b - 6 * c) * x * x * x + (6 * b + 30 * c) * x * x + (-12 * b - 48 * c) * x + (8 * b + 24 * c)) / 6.0;
+                    return 0.0;
+                default:
+                    return x < 1.0 ? 1.0 - x : 0.0;
+            }
+        }
+    }
+
+    /* default for downscales: fastest, and the best PSNR in the Benchmarks resample suite */
+    public static final Filter DEFAULT_DOWNSCALE_FILTER = Filter.AREA;
+    /* default when either axis grows */
+    public static final Filter DEFAULT_UPSCALE_FILTER = Filter.LANCZOS3;
+
+    /* rows per fork-join task */
+    private static final int BAND_ROWS = 16;
+
+    /**
+     * Resample with {@link #DEFAULT_DOWNSCALE_FILTER} when neither axis grows, {@link #DEFAULT_UPSCALE_FILTER} otherwise.
+     */
+    public static BufferedImage resize(BufferedImage src, int dstW, int dstH) {
+        boolean downscale = dstW <= src.getWidth() && dstH <= src.getHeight();
+        return resize(src, dstW, dstH, downscale ? DEFAULT_DOWNSCALE_FILTER : DEFAULT_UPSCALE_FILTER);
+    }
+
+    /**
+     * Resample into a new TYPE_INT_ARGB image (TYPE_INT_RGB when the source has no alpha).
+     */
+    public static BufferedImage resize(BufferedImage src, int dstW, int dstH, Filter filter) {
+        if (dstW <= 0 || dstH <= 0) throw new IllegalArgumentException("Invalid target size " + dstW + "x" + dstH);
+        int srcW = src.getWidth();
+        int srcH = src.getHeight();
+        boolean alpha = src.getColorModel().hasAlpha();
+
+        Weights horizontal = Weights.of(srcW, dstW, filter);
+        Weights vertical = Weights.of(srcH, dstH, filter);
+
+        // horizontal pass: premultiplied ARGB floats, 4 per pixel
+        float[] tmp = new float[dstW * srcH * 4];
+        bands(srcH).forEach(band -> {
+            int[] row = new int[srcW];
+            float[] pm = new float[srcW * 4];
+            for (int y = band * BAND_ROWS, end = Math.min(srcH, y + BAND_ROWS); y < end; y++) {
+                readRow(src, y, row);
+                premultiply(row, pm, alpha);
+                int out = y * dstW * 4;
+                for (int x = 0; x < dstW; x++, out += 4) {
+                    int start = horizontal.start[x];
+                    int offset = x * horizontal.stride;
+                    float a = 0, r = 0, g = 0, b = 0;
+                    for (int k = 0, n = horizontal.count[x]; k < n; k++) {
+                        float wgt = horizontal.weights[offset + k];
+                        int p = (start + k) * 4;
+                        a += wgt * pm[p];
+                        r += wgt * pm[p + 1];
+                        g += wgt * pm[p + 2];
+                        b += wgt * pm[p + 3];
+                    }
+                    tmp[out] = a;
+                    tmp[out + 1] = r;
+                    tmp[out + 2] = g;
+                    tmp[out + 3] = b;
+                }
+            }
+        });
+
+        // vertical pass straight into the destination raster
+        BufferedImage dst = new BufferedImage(dstW, dstH, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) dst.getRaster().getDataBuffer()).getData();
+        int rowFloats = dstW * 4;
+        bands(dstH).forEach(band -> {
+            float[] acc = new float[rowFloats];
+            for (int y = band * BAND_ROWS, end = Math.min(dstH, y + BAND_ROWS); y < end; y++) {
+                Arrays.fill(acc, 0f);
+                int start = vertical.start[y];
+                int offset = y * vertical.stride;
+                for (int k = 0, n = vertical.count[y]; k < n; k++) {
+                    float wgt = vertical.weights[offset + k];
+                    int base = (start + k) * rowFloats;
+                    for (int i = 0; i < rowFloats; i++) acc[i] += wgt * tmp[base + i];
+                }
+                int out = y * dstW;
+                for (int x = 0, i = 0; x < dstW; x++, i += 4) {
+                    pixels[out + x] = unpremultiply(acc[i], acc[i + 1], acc[i + 2], acc[i + 3], alpha);
+                }
+            }
+        });
+        return dst;
+    }
+
+    private static IntStream bands(int rows) {
+        int count = (rows + BAND_ROWS - 1) / BAND_ROWS;
+        IntStream bands = IntStream.range(0, count);
+        return count > 1 && ForkJoinPool.getCommonPoolParallelism() > 1 ? bands.parallel() : bands;
+    }
+
+    private static void readRow(BufferedImage src, int y, int[] row) {
+        int w = src.getWidth();
+        int type = src.getType();
+        if (src.getRaster().getParent() == null
+                && (type == BufferedImage.TYPE_INT_ARGB || type == BufferedImage.TYPE_INT_RGB)) {
+            System.arraycopy(((DataBufferInt) src.getRaster().getDataBuffer()).getData(), y * w, row, 0, w);
+            if (type == BufferedImage.TYPE_INT_RGB) {
+                for (int x = 0; x < w; x++) row[x] |= 0xFF000000;
+            }
+        } else {
+            src.getRGB(0, y, w, 1, row, 0, w);
+        }
+    }
+
+    private static void premultiply(int[] row, float[] pm, boolean alpha) {
+        for (int x = 0, i = 0; x < row.length; x++, i += 4) {
+            int argb = row[x];
+            float a = alpha ? (argb >>> 24) / 255f : 1f;
+            pm[i] = a;
+            pm[i + 1] = ((argb >> 16) & 0xFF) * a;
+            pm[i + 2] = ((argb >> 8) & 0xFF) * a;
+            pm[i + 3] = (argb & 0xFF) * a;
+        }
+    }
+
+    private static int unpremultiply(float a, float r, float g, float b, boolean alpha) {
+        if (!alpha) return 0xFF000000 | clamp(r) << 16 | clamp(g) << 8 | clamp(b);
+        if (a <= 1f / 512f) return 0;
+        float inv = 1f / a;
+        return clamp(a * 255f) << 24 | clamp(r * inv) << 16 | clamp(g * inv) << 8 | clamp(b * inv);
+    }
+
+    private static int clamp(float v) {
+        int i = Math.round(v);
+        return i < 0 ? 0 : Math.min(i, 255);
+    }
+
+    /* Normalized contributor table for one axis: dst index -> [start, start + count) source pixels */
+    static final class Weights {
+        final int[] start;
+        final int[] count;
+        final float[] weights;
+        final int stride;
+
+        private Weights(int[] start, int[] count, float[] weights, int stride) {
+            this.start = start;
+            this.count = count;
+            this.weights = weights;
+            this.stride = stride;
+        }
+
+        static Weights of(int srcSize, int dstSize, Filter filter) {
+            double scale = (double) srcSize / dstSize;
+            boolean area = filter == Filter.AREA && scale > 1.0;
+            double stretch = Math.max(1.0, scale);
+            double radius = area ? scale / 2.0 : filter.support * stretch;
+            int stride = (int) Math.ceil(2 * radius) + 2;
+
+            int[] start = new int[dstSize];
+            int[] count = new int[dstSize];
+            float[] weights = new float[dstSize * stride];
+            for (int i = 0; i < dstSize; i++) {
+                double center = (i + 0.5) * scale;
+                int first = Math.max(0, (int) Math.floor(center - radius));
+                int last = Math.min(srcSize - 1, (int) Math.ceil(center + radius));
+                int n = Math.min(stride, last - first + 1);
+
+                double sum = 0;
+                for (int k = 0; k < n; k++) {
+                    int j = first + k;
+                    double w = area
+                            // overlap of source pixel [j, j + 1) with the destination footprint
+                            ? Math.max(0, Math.min(j + 1, center + radius) - Math.max(j, center - radius))
+                            : filter.weight((j + 0.5 - center) / stretch);
+                    weights[i * stride + k] = (float) w;
+                    sum += w;
+                }
+                if (sum != 0) {
+                    for (int k = 0; k < n; k++) weights[i * stride + k] /= (float) sum;
+                }
+                start[i] = first;
+                count[i] = n;
+            }
+            return new Weights(start, count, weights, stride);
+        }
+    }
+}
@@ -4,41 +4,54 @@ import lombok.extern.slf4j.Slf4j;
 
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
 
 @Slf4j
 public class TransparencyDetectorUtil {
+
+    /* below this many pixels a single band is faster than forking */
+    private static final long PARALLEL_MIN_PIXELS = 1L << 20;
+
     public static boolean hasTransparency(InputStream imageStream, RuntimeException runtimeException) {
+        byte[] imageBytes;
         try {
+            imageBytes = imageStream.readAllBytes();
+        } catch (IOException e) {
+            throw runtimeException;
+        }
+        return hasTransparency(imageBytes, runtimeException);
+    }
 
-            BufferedImage img = ImageIO.read(imageStream);
-            if (img == null) {
-                throw new IllegalArgumentException("Invalid image");
-            }
-
-            if (!img.getColorModel().hasAlpha()) {
+    /**
+     * The PNG/JPEG header is checked first; images that cannot carry alpha are answered without decoding.
+     */
+    public static boolean hasTransparency(byte[] imageBytes, RuntimeException runtimeException) {
+        try {
+            ImageHeader header = ImageHeader.sniff(imageBytes);
+            if (!header.isAlphaPossible()) {
+                log.debug("{} header without alpha, skipping decode", header.getFormat());
                 return false;
             }
 
-            int width = img.getWidth();
-            int height = img.getHeight();
-
-            for (int y = 0; y < height; y++) {
-                for (int x = 0; x < width; x++) {
-                    int pixel = img.getRGB(x, y);
-                    int alpha = (pixel >> 24) & 0xff;
-
-                    if (alpha < 255) {
-                        return true;
-                    }
-                }
+            BufferedImage img = ImageIO.read(new ByteArrayInputStream(imageBytes));
+            if (img == null) {
+                throw new IllegalArgumentException("Invalid image");
             }
-            return false;
+            return anyAlphaBelow(img, 255);
         } catch (Exception e) {
             throw runtimeException;
         }
     }
+
     /*
         | Rasio        | Arti                     |
         | ------------ | ------------------------ |
@@ -48,22 +61,94 @@ public class TransparencyDetectorUtil {
     */
     public static double transparencyRatio(File inputFile, RuntimeException runtimeException) {
         try {
-            BufferedImage img = ImageIO.read(inputFile);
+            byte[] bytes = Files.readAllBytes(inputFile.toPath());
+            if (!ImageHeader.sniff(bytes).isAlphaPossible()) return 0.0;
+
+            BufferedImage img = ImageIO.read(new ByteArrayInputStream(bytes));
             if (!img.getColorModel().hasAlpha()) return 0.0;
 
-            long transparent = 0;
             long total = (long) img.getWidth() * img.getHeight();
-
-            for (int y = 0; y < img.getHeight(); y++) {
-                for (int x = 0; x < img.getWidth(); x++) {
-                    int alpha = (img.getRGB(x, y) >> 24) & 0xff;
-                    if (alpha < 250) transparent++;
-                }
-            }
-            return (double) transparent / total;
+            return (double) countAlphaBelow(img, 250) / total;
         } catch (Exception e) {
             log.error("Error calculating transparency ratio", e);
             throw runtimeException;
         }
     }
+
+    /**
+     * True when any pixel has alpha below {@code threshold}. Scans the raw data buffer in parallel
+     * row bands and stops as soon as one band finds a hit.
+     */
+    public static boolean anyAlphaBelow(BufferedImage img, int threshold) {
+        if (!img.getColorModel().hasAlpha()) return false;
+        AtomicBoolean found = new AtomicBoolean();
+        bands(img).forEach(band -> {
+            int[] scratch = new int[img.getWidth()];
+            for (int y = bandStart(img, band); y < bandStart(img, band + 1) && !found.get(); y++) {
+                if (countRow(img, y, threshold, scratch, true) > 0) found.set(true);
+            }
+        });
+        return found.get();
+    }
+
+    /** Number of pixels with alpha below {@code threshold}, counted over parallel row bands */
+    public static long countAlphaBelow(BufferedImage img, int threshold) {
+        if (!img.getColorModel().hasAlpha()) return 0;
+        return bands(img).mapToLong(band -> {
+            int[] scratch = new int[img.getWidth()];
+            long count = 0;
+            for (int y = bandStart(img, band); y < bandStart(img, band + 1); y++) {
+                count += countRow(img, y, threshold, scratch, false);
+            }
+            return count;
+        }).sum();
+    }
+
+    private static IntStream bands(BufferedImage img) {
+        int count = bandCount(img);
+        IntStream bands = IntStream.range(0, count);
+        return count > 1 ? bands.parallel() : bands;
+    }
+
+    private static int bandCount(BufferedImage img) {
+        if ((long) img.getWidth() * img.getHeight() < PARALLEL_MIN_PIXELS) return 1;
+        return Math.min(img.getHeight(), ForkJoinPool.getCommonPoolParallelism() * 4);
+    }
+
+    private static int bandStart(BufferedImage img, int band) {
+        return (int) ((long) band * img.getHeight() / bandCount(img));
+    }
+
+    /* Straight from the int/byte array for the common non-premultiplied layouts, getRGB rows otherwise */
+    private static int countRow(BufferedImage img, int y, int threshold, int[] scratch, boolean stopAtFirst) {
+        int w = img.getWidth();
+        boolean direct = img.getRaster().getParent() == null;
+        int count = 0;
+        if (direct && img.getType() == BufferedImage.TYPE_INT_ARGB) {
+            int[] data = ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+            for (int i = y * w, end = i + w; i < end; i++) {
+                if ((data[i] >>> 24) < threshold) {
+                    count++;
+                    if (stopAtFirst) return count;
+                }
+            }
+        } else if (direct && img.getType() == BufferedImage.TYPE_4BYTE_ABGR) {
+            byte[] data = ((DataBufferByte) img.getRaster().getDataBuffer()).getData();
+            for (int i = y * w * 4, end = i + w * 4; i < end; i += 4) {
+                if ((data[i] & 0xFF) < threshold) {
+                    count++;
+                    if (stopAtFirst) return count;
+                }
+            }
+        } else {
+            img.getRGB(0, y, w, 1, scratch, 0, w);
+            for (int x = 0; x < w; x++) {
+                if ((scratch[x] >>> 24) < threshold) {
+                    count++;
+                    if (stopAtFirst) return count;
+                }
+            }
+        }
+        return count;
+    }
 }
@@ -0,0 +1,520 @@
+package id.rockierocker.image.benchmark;
+
+import id.rockierocker.image.preprocess.KMeansQuantization;
+import id.rockierocker.image.preprocess.MedianCutQuantization;
+import id.rockierocker.image.preprocess.OctreeQuantization;
+import id.rockierocker.image.preprocess.util.AlphaErosion;
+import id.rockierocker.image.preprocess.util.Convolution;
+import id.rockierocker.image.rembg.OnnxInputSizeSelector;
+import id.rockierocker.image.rembg.OnnxModelVariants;
+import id.rockierocker.image.rembg.OnnxRembg;
+import id.rockierocker.image.rembg.OnnxSession;
+import id.rockierocker.image.rembg.OnnxSessionOptions;
+import id.rockierocker.image.rembg.OpenCVRembg;
+import id.rockierocker.image.rembg.constant.OnnxInputSize;
+import id.rockierocker.image.util.PngEncoder;
+import id.rockierocker.image.util.Resampler;
+import id.rockierocker.image.vectorize.VTracerVectorizer;
+
+import javax.imageio.ImageIO;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.UnaryOperator;
+
+/**
+ * Timing harness for the image pipeline; correctness is covered by the unit tests next to each class.
+ * The first argument picks the suite, the rest are the suite's own. Each case is run once to warm up,
+ * then timed over the given number of runs. Not a unit test; run manually:
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=id.rockierocker.image.benchmark.Benchmarks \
+ *     -Dexec.args="quantize ./data-test/rembg 6 10 5"
+ * </pre>
+ * Suites:
+ * <ul>
+ *     <li>{@code outline [runs]}: previous RemoveOutline window scan vs {@link AlphaErosion} at radius 2, 6, 10</li>
+ *     <li>{@code png [dir] [runs]}: ImageIO vs the {@link PngEncoder} presets, time and size</li>
+ *     <li>{@code convolution [dir] [runs]}: previous per-pixel Sharpen vs {@link Convolution} kernels</li>
+ *     <li>{@code resample [runs]}: Graphics2D bicubic vs {@link Resampler} filters, time and PSNR</li>
+ *     <li>{@code quantize [dir] [k] [iterations] [runs] [vtracer]}: k-means, median cut and octree,
+ *     time, MSE and traced regions (plus real vtracer paths when a command is given)</li>
+ *     <li>{@code grabcut [dir] [runs]}: full resolution vs pyramid GrabCut</li>
+ *     <li>{@code onnx-input-size [model] [dir] [runs]}: OnnxRembg p50 / p95 at every input size and AUTO</li>
+ * </ul>
+ * Image suites read data-test/rembg by default, upscaled to {@value #SIZE}x{@value #SIZE} ARGB where
+ * noted so the timings are not dominated by call overhead.
+ */
+public class Benchmarks {
+
+    private static final int SIZE = 2048;
+    /* vtracer's default --filter_speckle: smaller patches are merged into a neighbour, not traced */
+    private static final int SPECKLE = 4;
+    private static final List<List<Float>> SHARPEN = List.of(
+            List.of(0f, -1f, 0f),
+            List.of(-1f, 5f, -1f),
+            List.of(0f, -1f, 0f));
+
+    interface Operation<T> {
+        T run() throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) throw new IllegalArgumentException("Usage: Benchmarks <suite> [args], see the class doc");
+        String[] rest = Arrays.copyOfRange(args, 1, args.length);
+        switch (args[0]) {
+            case "outline" -> outline(rest);
+            case "png" -> png(rest);
+            case "convolution" -> convolution(rest);
+            case "resample" -> resample(rest);
+            case "quantize" -> quantize(rest);
+            case "grabcut" -> grabcut(rest);
+            case "onnx-input-size" -> onnxInputSize(rest);
+            default -> throw new IllegalArgumentException("Unknown suite: " + args[0]);
+        }
+    }
+
+    // =========================
+    // Suites
+    // =========================
+
+    /* synthetic sticker cutout: the previous scan grows with (2r + 1)^2, the distance transform should not grow */
+    private static void outline(String[] args) throws Exception {
+        int runs = intArg(args, 0, 3);
+        BufferedImage cutout = cutout(SIZE);
+        System.out.printf("%-8s %-18s %10s%n", "radius", "method", "mean ms");
+        for (int radius : new int[]{2, 6, 10}) {
+            print(radius, "previous scan", time(runs, () -> previousRemoveContour(cutout, radius)));
+            print(radius, "distance HARD", time(runs, () -> AlphaErosion.erode(cutout, radius, AlphaErosion.Mode.HARD)));
+            print(radius, "distance SOFT", time(runs, () -> AlphaErosion.erode(cutout, radius, AlphaErosion.Mode.SOFT)));
+        }
+    }
+
+    private static void png(String[] args) throws Exception {
+        File[] files = images(args, 0);
+        int runs = intArg(args, 1, 5);
+        System.out.printf("%-24s %-10s %10s %12s%n", "image", "encoder", "mean ms", "bytes");
+        for (File file : files) {
+            BufferedImage source = ImageIO.read(file);
+            Map<String, BufferedImage> variants = new LinkedHashMap<>();
+            variants.put(file.getName(), source);
+            variants.put(file.getName() + " argb", scaled(source, source.getWidth(), source.getHeight()));
+            variants.put(file.getName() + " argb x4", scaled(source, source.getWidth() * 4, source.getHeight() * 4));
+
+            for (Map.Entry<String, BufferedImage> variant : variants.entrySet()) {
+                BufferedImage image = variant.getValue();
+                Map<String, Operation<byte[]>> encoders = new LinkedHashMap<>();
+                encoders.put("ImageIO", () -> {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    ImageIO.write(image, "png", out);
+                    return out.toByteArray();
+                });
+                encoders.put("FAST", () -> PngEncoder.FAST.encode(image));
+                encoders.put("DEFAULT", () -> PngEncoder.DEFAULT.encode(image));
+                encoders.put("SMALLEST", () -> PngEncoder.SMALLEST.encode(image));
+                for (Map.Entry<String, Operation<byte[]>> encoder : encoders.entrySet()) {
+                    System.out.printf("%-24s %-10s %10.1f %12d%n", variant.getKey(), encoder.getKey(),
+                            time(runs, encoder.getValue()), encoder.getValue().run().length);
+                }
+            }
+        }
+    }
+
+    private static void convolution(String[] args) throws Exception {
+        File[] files = images(args, 0);
+        int runs = intArg(args, 1, 5);
+        float[] sharpen = Convolution.flatten(SHARPEN);
+        float[] box = new float[25];
+        Arrays.fill(box, 1f / 25);
+        // not rank 1 by a hair, so the full 2D loop runs
+        float[] box2d = box.clone();
+        box2d[0] += 1e-3f;
+        box2d[1] -= 1e-3f;
+
+        Map<String, UnaryOperator<BufferedImage>> filters = new LinkedHashMap<>();
+        filters.put("previous sharpen 3x3", Benchmarks::previousSharpen);
+        filters.put("sharpen 3x3", image -> Convolution.convolve(image, sharpen, Convolution.Border.REFLECT));
+        filters.put("box 5x5 separable", image -> Convolution.convolve(image, box, Convolution.Border.REFLECT));
+        filters.put("box 5x5 2D", image -> Convolution.convolve(image, box2d, Convolution.Border.REFLECT));
+        for (float sigma : new float[]{1f, 4f}) {
+            float[] gaussian = Convolution.gaussian(sigma);
+            filters.put("gaussian sigma " + (int) sigma, image -> Convolution.convolveSeparable(image, gaussian, gaussian, Convolution.Border.CLAMP));
+        }
+
+        System.out.printf("%-12s %-22s %10s%n", "image", "filter", "mean ms");
+        for (File file : files) {
+            BufferedImage upscaled = scaled(ImageIO.read(file), SIZE, SIZE);
+            for (Map.Entry<String, UnaryOperator<BufferedImage>> filter : filters.entrySet()) {
+                System.out.printf("%-12s %-22s %10.1f%n", file.getName(), filter.getKey(),
+                        time(runs, () -> filter.getValue().apply(upscaled)));
+            }
+        }
+    }
+
+    /*
+     * The source is a synthetic zone plate (rings of rising frequency) over a color gradient, so the ideal
+     * result is known: the analytic image box-averaged over each destination pixel with 8x8 supersampling.
+     * Aliasing shows up as a low PSNR.
+     */
+    private static void resample(String[] args) throws Exception {
+        int runs = intArg(args, 0, 5);
+        System.out.printf("%-14s %-12s %10s %10s%n", "case", "resizer", "mean ms", "PSNR dB");
+        for (int[] c : new int[][]{{4000, 320}, {1024, 512}}) {
+            int srcSize = c[0];
+            int dstSize = c[1];
+            BufferedImage source = renderScaled(srcSize, srcSize, 1.0, 1);
+            BufferedImage reference = renderScaled(dstSize, dstSize, (double) srcSize / dstSize, 8);
+
+            Map<String, UnaryOperator<BufferedImage>> resizers = new LinkedHashMap<>();
+            resizers.put("Graphics2D", image -> graphicsResize(image, dstSize, dstSize));
+            for (Resampler.Filter filter : Resampler.Filter.values()) {
+                resizers.put(filter.name(), image -> Resampler.resize(image, dstSize, dstSize, filter));
+            }
+            for (Map.Entry<String, UnaryOperator<BufferedImage>> resizer : resizers.entrySet()) {
+                System.out.printf("%-14s %-12s %10.1f %10.2f%n", srcSize + "->" + dstSize, resizer.getKey(),
+                        time(runs, () -> resizer.getValue().apply(source)), psnr(reference, resizer.getValue().apply(source)));
+            }
+        }
+    }
+
+    /*
+     * Each image upscaled and also pre-quantized to 32 colors (flat artwork, the unique-color path). Regions
+     * are 4-connected one-color areas of at least SPECKLE pixels, what vtracer traces into paths.
+     */
+    private static void quantize(String[] args) throws Exception {
+        File[] files = images(args, 0);
+        int k = intArg(args, 1, 6);
+        int iterations = intArg(args, 2, 10);
+        int runs = intArg(args, 3, 5);
+        VTracerVectorizer vtracer = args.length > 4 ? new VTracerVectorizer(args[4]) : null;
+
+        Map<String, UnaryOperator<BufferedImage>> quantizers = new LinkedHashMap<>();
+        quantizers.put("K_MEANS", image -> KMeansQuantization.kMeansQuantization(image, k, iterations));
+        quantizers.put("K_MEANS 32", image -> KMeansQuantization.kMeansQuantization(image, 32, iterations));
+        quantizers.put("MEDIAN_CUT", image -> MedianCutQuantization.medianCutQuantization(image, k));
+        quantizers.put("OCTREE", image -> OctreeQuantization.octreeQuantization(image, k));
+
+        System.out.printf("%-24s %-10s %10s %10s %8s %10s%n", "image", "quantizer", "mean ms", "MSE", "regions", "svg paths");
+        for (File file : files) {
+            BufferedImage upscaled = scaled(ImageIO.read(file), SIZE, SIZE);
+            Map<String, BufferedImage> variants = new LinkedHashMap<>();
+            variants.put(file.getName(), upscaled);
+            variants.put(file.getName() + " 32 colors", KMeansQuantization.kMeansQuantization(upscaled, 32, 10));
+
+            for (Map.Entry<String, BufferedImage> variant : variants.entrySet()) {
+                BufferedImage image = variant.getValue();
+                for (Map.Entry<String, UnaryOperator<BufferedImage>> quantizer : quantizers.entrySet()) {
+                    double ms = time(runs, () -> quantizer.getValue().apply(image));
+                    BufferedImage result = quantizer.getValue().apply(image);
+                    System.out.printf("%-24s %-10s %10.1f %10.1f %8d %10s%n", variant.getKey(), quantizer.getKey(),
+                            ms, mse(image, result), regions(result),
+                            vtracer == null ? "-" : String.valueOf(svgPaths(vtracer, result)));
+                }
+            }
+        }
+    }
+
+    private static void grabcut(String[] args) throws Exception {
+        File[] files = images(args, 0);
+        int runs = intArg(args, 1, 3);
+        System.out.printf("%-12s %-12s %8s %12s%n", "image", "size", "scale", "mean ms");
+        for (File file : files) {
+            BufferedImage image = ImageIO.read(file);
+            for (double scale : new double[]{1.0, 0.5, 0.25}) {
+                Map<String, Object> config = new HashMap<>();
+                config.put("method", "grabcut");
+                config.put("grabcutScale", scale);
+                config.put("grabcutRefineIterations", 1);
+                OpenCVRembg rembg = new OpenCVRembg();
+                rembg.configMap(config);
+                System.out.printf("%-12s %-12s %8.2f %12.1f%n", file.getName(),
+                        image.getWidth() + "x" + image.getHeight(), scale, time(runs, () -> rembg.removeBackground(image)));
+            }
+        }
+    }
+
+    private static void onnxInputSize(String[] args) throws Exception {
+        String modelPath = args.length > 0 ? args[0] : "./data/onnx-model/isnet-anime.onnx";
+        File[] files = images(args, 1);
+        int runs = intArg(args, 2, 20);
+        System.out.printf("%-12s %-18s %10s %10s%n", "image", "inputSize", "p50 ms", "p95 ms");
+        for (File file : files) {
+            BufferedImage image = ImageIO.read(file);
+            for (OnnxInputSize size : OnnxInputSize.values()) {
+                Map<String, Object> config = new HashMap<>();
+                config.put("onnxModelPath", modelPath);
+                config.put("onnxInputSize", size.name());
+                config.put("onnxBatchEnabled", false);
+                OnnxRembg rembg = new OnnxRembg();
+                rembg.configMap(config);
+
+                rembg.removeBackground(image); // warmup
+                long[] samples = new long[runs];
+                for (int i = 0; i < runs; i++) {
+                    long start = System.nanoTime();
+                    rembg.removeBackground(image);
+                    samples[i] = System.nanoTime() - start;
+                }
+                Arrays.sort(samples);
+                String label = size == OnnxInputSize.AUTO
+                        ? "AUTO->" + OnnxInputSizeSelector.select(image, config, OnnxSession.key(
+                                OnnxModelVariants.resolveModelPath(config), OnnxSessionOptions.fromConfig(config))).inputSize
+                        : size.name();
+                System.out.printf("%-12s %-18s %10.1f %10.1f%n", file.getName(), label,
+                        percentile(samples, 0.50), percentile(samples, 0.95));
+            }
+        }
+    }
+
+    // =========================
+    // Harness
+    // =========================
+
+    /* mean milliseconds over runs, after one warmup run */
+    private static double time(int runs, Operation<?> operation) throws Exception {
+        operation.run();
+        long total = 0;
+        for (int i = 0; i < runs; i++) {
+            long start = System.nanoTime();
+            operation.run();
+            total += System.nanoTime() - start;
+        }
+        return total / (runs * 1_000_000.0);
+    }
+
+    /* p-th percentile of sorted nanosecond samples, in milliseconds */
+    private static double percentile(long[] sorted, double p) {
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1_000_000.0;
+    }
+
+    private static void print(int radius, String method, double ms) {
+        System.out.printf("%-8d %-18s %10.1f%n", radius, method, ms);
+    }
+
+    private static File[] images(String[] args, int index) {
+        File imageDir = new File(args.length > index ? args[index] : "./data-test/rembg");
+        File[] files = imageDir.listFiles((dir, name) -> name.matches("(?i).*\\.(png|jpe?g)$"));
+        if (files == null || files.length == 0) throw new IllegalArgumentException("No images in " + imageDir);
+        Arrays.sort(files);
+        return files;
+    }
+
+    private static int intArg(String[] args, int index, int defaultValue) {
+        return args.length > index ? Integer.parseInt(args[index]) : defaultValue;
+    }
+
+    private static BufferedImage scaled(BufferedImage source, int w, int h) {
+        BufferedImage out = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+        out.getGraphics().drawImage(source, 0, 0, w, h, null);
+        return out;
+    }
+
+    // =========================
+    // Baselines and measures
+    // =========================
+
+    /* filled blobs with a thick dark outline on a transparent background, like generated sticker artwork */
+    private static BufferedImage cutout(int size) {
+        BufferedImage img = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = img.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        Random random = new Random(7);
+        for (int i = 0; i < 40; i++) {
+            int d = size / 12 + random.nextInt(size / 6);
+            int x = random.nextInt(size - d), y = random.nextInt(size - d);
+            g.setColor(new Color(random.nextInt(0xFFFFFF)));
+            g.fillOval(x, y, d, d);
+            g.setColor(Color.BLACK);
+            g.setStroke(new BasicStroke(8f));
+            g.drawOval(x, y, d, d);
+        }
+        g.dispose();
+        return img;
+    }
+
+    /* The previous RemoveOutline.removeContour, returning the image it modified */
+    private static BufferedImage previousRemoveContour(BufferedImage src, int radius) {
+        int w = src.getWidth();
+        int h = src.getHeight();
+        BufferedImage img = scaled(src, w, h);
+        BufferedImage copy = scaled(src, w, h);
+        for (int y = radius; y < h - radius; y++) {
+            for (int x = radius; x < w - radius; x++) {
+                int a = (copy.getRGB(x, y) >> 24) & 0xFF;
+                if (a == 0) continue;
+                boolean touchTransparent = false;
+                for (int dy = -radius; dy <= radius && !touchTransparent; dy++) {
+                    for (int dx = -radius; dx <= radius; dx++) {
+                        if (((copy.getRGB(x + dx, y + dy) >> 24) & 0xFF) == 0) {
+                            touchTransparent = true;
+                            break;
+                        }
+                    }
+                }
+                if (touchTransparent) img.setRGB(x, y, 0x00000000);
+            }
+        }
+        return img;
+    }
+
+    /* The previous Sharpen: per-channel kernel sums with getRGB per tap, border pixels copied */
+    private static BufferedImage previousSharpen(BufferedImage img) {
+        int w = img.getWidth();
+        int h = img.getHeight();
+        boolean hasAlpha = img.getColorModel().hasAlpha();
+        BufferedImage out = new BufferedImage(w, h, hasAlpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        int[] src = img.getRGB(0, 0, w, h, null, 0, w);
+        int[] dst = new int[src.length];
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                int pos = y * w + x;
+                if (x == 0 || y == 0 || x == w - 1 || y == h - 1) {
+                    dst[pos] = src[pos];
+                    continue;
+                }
+                int argb = (hasAlpha ? (src[pos] >> 24) & 0xff : 0xff) << 24;
+                for (int shift = 16; shift >= 0; shift -= 8) {
+                    float sum = 0;
+                    for (int ky = -1; ky <= 1; ky++) {
+                        for (int kx = -1; kx <= 1; kx++) {
+                            sum += ((img.getRGB(x + kx, y + ky) >> shift) & 0xff) * SHARPEN.get(ky + 1).get(kx + 1);
+                        }
+                    }
+                    argb |= Math.max(0, Math.min(255, (int) sum)) << shift;
+                }
+                dst[pos] = argb;
+            }
+        }
+        out.setRGB(0, 0, w, h, dst, 0, w);
+        return out;
+    }
+
+    /* The previous ImageUtil.resize implementation */
+    private static BufferedImage graphicsResize(BufferedImage img, int w, int h) {
+        BufferedImage out = new BufferedImage(w, h, img.getType());
+        Graphics2D g = out.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+        g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setRenderingHint(RenderingHints.KEY_COLOR_RENDERING, RenderingHints.VALUE_COLOR_RENDER_QUALITY);
+        g.drawImage(img, 0, 0, w, h, null);
+        g.dispose();
+        return out;
+    }
+
+    /* Analytic scene in source pixel units; each output pixel averages supersample^2 points of its footprint */
+    private static BufferedImage renderScaled(int w, int h, double scale, int supersample) {
+        BufferedImage image = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        double size = w * scale;
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                double r = 0, g = 0, b = 0;
+                for (int sy = 0; sy < supersample; sy++) {
+                    for (int sx = 0; sx < supersample; sx++) {
+                        double px = (x + (sx + 0.5) / supersample) * scale;
+                        double py = (y + (sy + 0.5) / supersample) * scale;
+                        double[] c = scene(px / size, py / size, size);
+                        r += c[0];
+                        g += c[1];
+                        b += c[2];
+                    }
+                }
+                int n = supersample * supersample;
+                image.setRGB(x, y, (int) Math.round(r / n) << 16 | (int) Math.round(g / n) << 8 | (int) Math.round(b / n));
+            }
+        }
+        return image;
+    }
+
+    /* u, v in 0..1: zone plate whose frequency stays below the source Nyquist limit, on a color gradient */
+    private static double[] scene(double u, double v, double size) {
+        double du = u - 0.5, dv = v - 0.5;
+        double zone = 0.5 + 0.5 * Math.cos(Math.PI * size * 0.25 * (du * du + dv * dv));
+        return new double[]{255 * zone, 255 * u, 255 * (0.3 + 0.7 * zone * v)};
+    }
+
+    private static double psnr(BufferedImage a, BufferedImage b) {
+        double mse = mse(a, b);
+        return mse == 0 ? 99 : 10 * Math.log10(255 * 255 / mse);
+    }
+
+    /* mean squared error over the RGB channels */
+    private static double mse(BufferedImage a, BufferedImage b) {
+        int w = a.getWidth();
+        int[] rowA = new int[w];
+        int[] rowB = new int[w];
+        double sum = 0;
+        for (int y = 0; y < a.getHeight(); y++) {
+            a.getRGB(0, y, w, 1, rowA, 0, w);
+            b.getRGB(0, y, w, 1, rowB, 0, w);
+            for (int x = 0; x < w; x++) {
+                for (int shift = 0; shift <= 16; shift += 8) {
+                    double d = ((rowA[x] >> shift) & 0xFF) - ((rowB[x] >> shift) & 0xFF);
+                    sum += d * d;
+                }
+            }
+        }
+        return sum / (3.0 * w * a.getHeight());
+    }
+
+    /* 4-connected regions of one ARGB value with at least SPECKLE pixels, transparent pixels skipped */
+    private static int regions(BufferedImage image) {
+        int w = image.getWidth();
+        int h = image.getHeight();
+        int[] pixels = image.getRGB(0, 0, w, h, null, 0, w);
+        boolean[] seen = new boolean[pixels.length];
+        int[] stack = new int[pixels.length];
+        int regions = 0;
+        for (int start = 0; start < pixels.length; start++) {
+            if (seen[start] || pixels[start] >>> 24 == 0) continue;
+            int color = pixels[start];
+            int size = 0, top = 0;
+            stack[top++] = start;
+            seen[start] = true;
+            while (top > 0) {
+                int i = stack[--top];
+                size++;
+                int x = i % w;
+                if (x > 0) top = visit(pixels, seen, stack, top, i - 1, color);
+                if (x < w - 1) top = visit(pixels, seen, stack, top, i + 1, color);
+                if (i >= w) top = visit(pixels, seen, stack, top, i - w, color);
+                if (i + w < pixels.length) top = visit(pixels, seen, stack, top, i + w, color);
+            }
+            if (size >= SPECKLE) regions++;
+        }
+        return regions;
+    }
+
+    private static int visit(int[] pixels, boolean[] seen, int[] stack, int top, int i, int color) {
+        if (seen[i] || pixels[i] != color) return top;
+        seen[i] = true;
+        stack[top] = i;
+        return top + 1;
+    }
+
+    private static int svgPaths(VTracerVectorizer vtracer, BufferedImage image) throws Exception {
+        Path input = Files.createTempFile("quantized", ".png");
+        try {
+            ImageIO.write(image, "png", input.toFile());
+            String svg = new String(vtracer.vectorize(input, List.of("--colormode", "color")));
+            int paths = 0;
+            for (int i = svg.indexOf("<path"); i >= 0; i = svg.indexOf("<path", i + 1)) paths++;
+            return paths;
+        } finally {
+            Files.deleteIfExists(input);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package id.rockierocker.image.preprocess;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KMeansQuantizationTest {
+
+    @Test
+    void sameImageGivesSamePixels() {
+        // 300 colors take the unique-color path, 200x200 random colors the pixel sample
+        for (BufferedImage image : new BufferedImage[]{image(64, 300), image(200, 1 << 24)}) {
+            int[] first = pixels(KMeansQuantization.kMeansQuantization(image, 6, 10));
+            int[] second = pixels(KMeansQuantization.kMeansQuantization(image, 6, 10));
+            assertArrayEquals(first, second);
+        }
+    }
+
+    @Test
+    void assignmentSumsDoNotDependOnPoolSize() {
+        Random random = new Random(3);
+        BufferedImage image = image(256, 1 << 24);
+        KMeansQuantization.Points points = KMeansQuantization.Points.sample(pixels(image), false, random);
+        float[][] centroids = KMeansQuantization.seedCentroids(points, 8, random);
+        assertTrue(points.size > 4 * 4096, "needs several fork-join tasks");
+
+        double[] sequential = KMeansQuantization.assign(points, centroids, 0, points.size);
+        for (int parallelism : new int[]{1, 2, 4, 8}) {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                double[] sums = pool.invoke(new KMeansQuantization.AssignTask(points, centroids, 0, points.size));
+                assertArrayEquals(sequential, sums, "parallelism " + parallelism);
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    @Test
+    void fewColorsAreKeptExactly() {
+        BufferedImage image = image(32, 4);
+        assertArrayEquals(pixels(image), pixels(KMeansQuantization.kMeansQuantization(image, 6, 10)));
+    }
+
+    /* opaque image of random colors drawn from a fixed set of the given size */
+    private static BufferedImage image(int size, int colors) {
+        Random random = new Random(size);
+        int[] palette = new int[Math.min(colors, 4096)];
+        for (int i = 0; i < palette.length; i++) palette[i] = random.nextInt(0x1000000);
+        BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                image.setRGB(x, y, colors > palette.length ? random.nextInt() : palette[random.nextInt(palette.length)]);
+            }
+        }
+        return image;
+    }
+
+    private static int[] pixels(BufferedImage image) {
+        int w = image.getWidth();
+        return image.getRGB(0, 0, w, image.getHeight(), null, 0, w);
+    }
+}
@@ -0,0 +1,63 @@
+package id.rockierocker.image.preprocess.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class AlphaErosionTest {
+
+    @Test
+    void hardErosionMatchesBruteForce() {
+        BufferedImage cutout = cutout(96);
+        for (float radius : new float[]{1f, 2f, 3.5f, 6f, 10f}) {
+            BufferedImage eroded = AlphaErosion.erode(cutout, radius, AlphaErosion.Mode.HARD);
+            for (int y = 0; y < cutout.getHeight(); y++) {
+                for (int x = 0; x < cutout.getWidth(); x++) {
+                    int expected = keptByBruteForce(cutout, x, y, radius) ? cutout.getRGB(x, y) : 0;
+                    assertEquals(expected, eroded.getRGB(x, y), "radius " + radius + " at " + x + "," + y);
+                }
+            }
+        }
+    }
+
+    @Test
+    void imageWithoutAlphaIsUnchanged() {
+        BufferedImage opaque = new BufferedImage(8, 8, BufferedImage.TYPE_INT_RGB);
+        assertSame(opaque, AlphaErosion.erode(opaque, 3, AlphaErosion.Mode.HARD));
+    }
+
+    /* filled blobs on a transparent background, anti-aliased so the edges have partial alpha */
+    private static BufferedImage cutout(int size) {
+        BufferedImage img = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = img.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        Random random = new Random(7);
+        for (int i = 0; i < 6; i++) {
+            int d = size / 6 + random.nextInt(size / 3);
+            g.setColor(new Color(random.nextInt(0xFFFFFF)));
+            g.fillOval(random.nextInt(size - d), random.nextInt(size - d), d, d);
+        }
+        g.dispose();
+        return img;
+    }
+
+    /* kept iff no transparent pixel lies within Euclidean distance radius; outside the image counts as opaque */
+    private static boolean keptByBruteForce(BufferedImage img, int x, int y, float radius) {
+        int r = (int) Math.ceil(radius);
+        for (int dy = -r; dy <= r; dy++) {
+            for (int dx = -r; dx <= r; dx++) {
+                int nx = x + dx, ny = y + dy;
+                if (dx * dx + dy * dy > radius * radius || nx < 0 || ny < 0 || nx >= img.getWidth() || ny >= img.getHeight()) continue;
+                if (img.getRGB(nx, ny) >>> 24 <= PreprocessUtil.TRANSPARENT_ALPHA) return false;
+            }
+        }
+        return true;
+    }
+}
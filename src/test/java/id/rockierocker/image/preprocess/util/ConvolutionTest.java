@@ -0,0 +1,90 @@
+package id.rockierocker.image.preprocess.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConvolutionTest {
+
+    private static final List<List<Float>> SHARPEN = List.of(
+            List.of(0f, -1f, 0f),
+            List.of(-1f, 5f, -1f),
+            List.of(0f, -1f, 0f));
+
+    @Test
+    void sharpenInteriorMatchesPreviousSharpen() {
+        BufferedImage image = noise(70, 45);
+        BufferedImage sharpened = Convolution.convolve(image, Convolution.flatten(SHARPEN), Convolution.Border.REFLECT);
+        for (int y = 1; y < image.getHeight() - 1; y++) {
+            for (int x = 1; x < image.getWidth() - 1; x++) {
+                assertEquals(previousSharpen(image, x, y), sharpened.getRGB(x, y), "at " + x + "," + y);
+            }
+        }
+    }
+
+    @Test
+    void separablePassesMatchTheFullKernel() {
+        BufferedImage image = noise(70, 45);
+        float[] box = new float[25];
+        Arrays.fill(box, 1f / 25);
+        assertNotNull(Convolution.separate(box, 5));
+        // not rank 1 by a hair, so the 2D loop runs
+        float[] box2d = box.clone();
+        box2d[0] += 1e-6f;
+        box2d[1] -= 1e-6f;
+        assertNull(Convolution.separate(box2d, 5));
+
+        BufferedImage separable = Convolution.convolve(image, box, Convolution.Border.CLAMP);
+        BufferedImage full = Convolution.convolve(image, box2d, Convolution.Border.CLAMP);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                int a = separable.getRGB(x, y), b = full.getRGB(x, y);
+                for (int shift = 0; shift <= 24; shift += 8) {
+                    assertTrue(Math.abs(((a >> shift) & 0xFF) - ((b >> shift) & 0xFF)) <= 1, "at " + x + "," + y);
+                }
+            }
+        }
+    }
+
+    @Test
+    void borderIndexResolvesOutsidePositions() {
+        assertEquals(0, Convolution.borderIndex(-2, 5, Convolution.Border.CLAMP));
+        assertEquals(4, Convolution.borderIndex(6, 5, Convolution.Border.CLAMP));
+        assertEquals(2, Convolution.borderIndex(-2, 5, Convolution.Border.REFLECT));
+        assertEquals(2, Convolution.borderIndex(6, 5, Convolution.Border.REFLECT));
+        assertEquals(0, Convolution.borderIndex(3, 1, Convolution.Border.REFLECT));
+    }
+
+    /* ARGB noise with random alpha; the image height spans two row tiles */
+    private static BufferedImage noise(int w, int h) {
+        BufferedImage image = new BufferedImage(w, h * 2, BufferedImage.TYPE_INT_ARGB);
+        Random random = new Random(w * 31 + h);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < w; x++) image.setRGB(x, y, random.nextInt());
+        }
+        return image;
+    }
+
+    /* The previous Sharpen for one interior pixel: truncated per-channel sums, source alpha */
+    private static int previousSharpen(BufferedImage img, int x, int y) {
+        int argb = img.getRGB(x, y) & 0xFF000000;
+        for (int shift = 16; shift >= 0; shift -= 8) {
+            float sum = 0;
+            for (int ky = -1; ky <= 1; ky++) {
+                for (int kx = -1; kx <= 1; kx++) {
+                    sum += ((img.getRGB(x + kx, y + ky) >> shift) & 0xFF) * SHARPEN.get(ky + 1).get(kx + 1);
+                }
+            }
+            argb |= Math.max(0, Math.min(255, (int) sum)) << shift;
+        }
+        return argb;
+    }
+}
@@ -0,0 +1,47 @@
+package id.rockierocker.image.rembg;
+
+import ai.onnxruntime.OnnxTensor;
+import ai.onnxruntime.OrtEnvironment;
+import ai.onnxruntime.OrtException;
+import nu.pattern.OpenCV;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+import java.nio.FloatBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class OnnxInferenceBatcherTest {
+
+    @BeforeAll
+    static void loadOpenCV() {
+        OpenCV.loadLocally();
+    }
+
+    @Test
+    void splitsABatchedOutputIntoOneMaskPerImage() throws OrtException {
+        int n = 3, h = 5, w = 7;
+        float[] values = new float[n * h * w];
+        for (int i = 0; i < values.length; i++) values[i] = i / (float) values.length;
+
+        try (OnnxTensor tensor = OnnxTensor.createTensor(OrtEnvironment.getEnvironment(),
+                FloatBuffer.wrap(values), new long[]{n, 1, h, w})) {
+            Mat[] masks = OnnxInferenceBatcher.outputMasksToMats(tensor);
+            assertEquals(n, masks.length);
+            for (int i = 0; i < n; i++) {
+                assertEquals(CvType.CV_32FC1, masks[i].type());
+                assertEquals(h, masks[i].rows());
+                assertEquals(w, masks[i].cols());
+                float[] plane = new float[h * w];
+                masks[i].get(0, 0, plane);
+                float[] expected = new float[h * w];
+                System.arraycopy(values, i * h * w, expected, 0, h * w);
+                assertArrayEquals(expected, plane, "image " + i);
+                masks[i].release();
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package id.rockierocker.image.rembg;
+
+import id.rockierocker.image.rembg.constant.OnnxInputSize;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class OnnxInputSizeSelectorTest {
+
+    @Test
+    void latencyBudgetUsesTheEstimatesOfTheGivenSession() {
+        BufferedImage detailed = noise(1200);
+        Map<String, Object> config = Map.of("onnxAutoLatencyBudgetMs", 100);
+        String slow = OnnxSession.key("slow.onnx", OnnxSessionOptions.DEFAULT);
+        String fast = OnnxSession.key("fast.onnx", OnnxSessionOptions.DEFAULT);
+
+        OnnxInputSizeSelector.recordLatency(slow, 1024, 400);
+        OnnxInputSizeSelector.recordLatency(fast, 1024, 40);
+
+        assertEquals(OnnxInputSize.INPUT_SIZE_512, OnnxInputSizeSelector.select(detailed, config, slow));
+        assertEquals(OnnxInputSize.INPUT_SIZE_1024, OnnxInputSizeSelector.select(detailed, config, fast));
+    }
+
+    /* random pixels, every sample point is an edge so the detail score is at its maximum */
+    private static BufferedImage noise(int size) {
+        BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(size);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) image.setRGB(x, y, random.nextInt());
+        }
+        return image;
+    }
+}
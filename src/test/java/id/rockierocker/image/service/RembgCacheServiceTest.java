@@ -0,0 +1,160 @@
+package id.rockierocker.image.service;
+
+import id.rockierocker.image.model.RembgConfig;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDateTime;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RembgCacheServiceTest {
+
+    /* 256x256 ARGB is 256 KiB in memory, four of them fill a 1 MiB memory tier */
+    private static final int SIZE = 256;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void keyCoversPixelsConfigCodeAndConfigVersion() {
+        RembgCacheService cache = cache(1, false, 0, 0);
+        LocalDateTime created = LocalDateTime.of(2026, 1, 1, 0, 0);
+        BufferedImage image = noise(16, 1);
+        String key = cache.key(image, config("ONNX", created, null));
+
+        assertEquals(key, cache.key(noise(16, 1), config("ONNX", created, null)));
+        assertNotEquals(key, cache.key(noise(16, 2), config("ONNX", created, null)));
+        assertNotEquals(key, cache.key(image, config("OPENCV", created, null)));
+        // editing the config bumps its update time, which must invalidate earlier results
+        String edited = cache.key(image, config("ONNX", created, created.plusMinutes(5)));
+        assertNotEquals(key, edited);
+        assertNotEquals(edited, cache.key(image, config("ONNX", created, created.plusMinutes(6))));
+    }
+
+    @Test
+    void memoryTierEvictsTheLeastRecentlyUsedByBytes() {
+        RembgCacheService cache = cache(1, false, 0, 0);
+        for (int i = 0; i < 4; i++) cache.put("k" + i, noise(SIZE, i));
+        assertNotNull(cache.get("k0"));
+
+        cache.put("k4", noise(SIZE, 4));
+        assertNull(cache.get("k1"));
+        for (String kept : new String[]{"k0", "k2", "k3", "k4"}) assertNotNull(cache.get(kept), kept);
+        assertEquals(5, cache.getMemoryHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    void imagesGoInAndComeOutAsCopies() {
+        RembgCacheService cache = cache(1, false, 0, 0);
+        BufferedImage image = noise(8, 1);
+        int[] pixels = pixels(image);
+        cache.put("k", image);
+        image.setRGB(0, 0, 0);
+        cache.get("k").setRGB(1, 0, 0);
+        assertArrayEquals(pixels, pixels(cache.get("k")));
+    }
+
+    @Test
+    void diskTierPrunesLeastRecentlyUsedFilesToNinetyPercentOfTheEntryLimit() throws IOException {
+        // no memory tier, every get reads the disk tier
+        RembgCacheService cache = cache(0, true, 0, 10);
+        for (int i = 0; i < 10; i++) cache.put("k" + i, noise(8, i));
+        age(10);
+        assertNotNull(cache.get("k0")); // touched, now the most recently used
+
+        cache.put("k10", noise(8, 10));
+        assertEquals(9, pngFiles());
+        assertFalse(Files.exists(cacheFile("k1")));
+        assertFalse(Files.exists(cacheFile("k2")));
+        assertNotNull(cache.get("k0"));
+        assertNotNull(cache.get("k10"));
+        assertEquals(3, cache.getDiskHits());
+    }
+
+    @Test
+    void diskTierPrunesToNinetyPercentOfTheByteLimit() throws IOException {
+        // random 320x320 ARGB does not compress, each PNG is about 400 KB of the 1 MiB limit
+        RembgCacheService cache = cache(0, true, 1, 0);
+        cache.put("k0", noise(320, 0));
+        cache.put("k1", noise(320, 1));
+        age(2);
+
+        cache.put("k2", noise(320, 2));
+        assertFalse(Files.exists(cacheFile("k0")));
+        assertTrue(Files.exists(cacheFile("k1")));
+        assertTrue(Files.exists(cacheFile("k2")));
+        long bytes;
+        try (Stream<Path> files = Files.list(tempDir.resolve("rembg-cache"))) {
+            bytes = files.mapToLong(file -> file.toFile().length()).sum();
+        }
+        assertTrue(bytes <= 1024 * 1024 * 9 / 10, bytes + " bytes left");
+    }
+
+    @Test
+    void startupDropsTempFilesAndReadsExistingEntries() throws IOException {
+        cache(0, true, 0, 0).put("k", noise(8, 1));
+        Files.write(tempDir.resolve("rembg-cache").resolve("k123.tmp"), new byte[16]);
+
+        RembgCacheService restarted = cache(0, true, 0, 0);
+        assertFalse(Files.exists(tempDir.resolve("rembg-cache").resolve("k123.tmp")));
+        assertNotNull(restarted.get("k"));
+    }
+
+    private RembgCacheService cache(long memoryMaxMb, boolean diskEnabled, long diskMaxMb, long diskMaxEntries) {
+        OutputDirectoryManagerService outputDirectory = new OutputDirectoryManagerService(tempDir.toString(), 24, false, 60);
+        return new RembgCacheService(outputDirectory, memoryMaxMb, diskEnabled, diskMaxMb, diskMaxEntries);
+    }
+
+    /* gives cache files k0..k(n-1) increasing modification times an hour in the past, k0 the oldest */
+    private void age(int n) throws IOException {
+        long base = System.currentTimeMillis() - 3_600_000;
+        for (int i = 0; i < n; i++) Files.setLastModifiedTime(cacheFile("k" + i), FileTime.fromMillis(base + i * 1000L));
+    }
+
+    private Path cacheFile(String key) {
+        return tempDir.resolve("rembg-cache").resolve(key + ".png");
+    }
+
+    private long pngFiles() throws IOException {
+        try (Stream<Path> files = Files.list(tempDir.resolve("rembg-cache"))) {
+            return files.filter(file -> file.toString().endsWith(".png")).count();
+        }
+    }
+
+    private static RembgConfig config(String code, LocalDateTime created, LocalDateTime updated) {
+        RembgConfig config = new RembgConfig();
+        config.setConfigCode(code);
+        config.setCreated(created);
+        config.setUpdated(updated);
+        return config;
+    }
+
+    private static BufferedImage noise(int size, int seed) {
+        BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        Random random = new Random(seed);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) image.setRGB(x, y, random.nextInt());
+        }
+        return image;
+    }
+
+    private static int[] pixels(BufferedImage image) {
+        int w = image.getWidth();
+        return image.getRGB(0, 0, w, image.getHeight(), null, 0, w);
+    }
+}
@@ -0,0 +1,129 @@
+package id.rockierocker.image.util;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ImageHeaderTest {
+
+    @Test
+    void opaquePngHasNoAlpha() throws IOException {
+        ImageHeader header = ImageHeader.sniff(png(new BufferedImage(40, 30, BufferedImage.TYPE_INT_RGB)));
+        assertEquals(ImageHeader.PNG, header.getFormat());
+        assertEquals(40, header.getWidth());
+        assertEquals(30, header.getHeight());
+        assertFalse(header.isAlphaPossible());
+    }
+
+    @Test
+    void pngWithAlphaChannel() throws IOException {
+        ImageHeader header = ImageHeader.sniff(png(new BufferedImage(7, 9, BufferedImage.TYPE_INT_ARGB)));
+        assertEquals(7, header.getWidth());
+        assertEquals(9, header.getHeight());
+        assertTrue(header.isAlphaPossible());
+    }
+
+    @Test
+    void palettePngWithTransparentEntryHasAlpha() throws IOException {
+        byte[] gray = {0, (byte) 0x80, (byte) 0xFF};
+        IndexColorModel palette = new IndexColorModel(2, 3, gray, gray, gray, 0);
+        byte[] bytes = png(new BufferedImage(16, 8, BufferedImage.TYPE_BYTE_INDEXED, palette));
+        assertTrue(indexOf(bytes, "tRNS") > 0, "ImageIO wrote no tRNS chunk");
+
+        ImageHeader header = ImageHeader.sniff(bytes);
+        assertEquals(16, header.getWidth());
+        assertEquals(8, header.getHeight());
+        assertTrue(header.isAlphaPossible());
+    }
+
+    @Test
+    void pngCutBeforeTheFirstIdatMayHaveAlpha() throws IOException {
+        byte[] bytes = png(new BufferedImage(40, 30, BufferedImage.TYPE_INT_RGB));
+        ImageHeader header = ImageHeader.sniff(Arrays.copyOf(bytes, 8 + 25 + 4));
+        assertEquals(40, header.getWidth());
+        assertTrue(header.isAlphaPossible());
+    }
+
+    @Test
+    void jpegSizeIsReadFromSofAfterAppSegments() {
+        ByteBuffer b = ByteBuffer.allocate(64);
+        b.put(new byte[]{(byte) 0xFF, (byte) 0xD8});
+        segment(b, 0xE0, "JFIF\0".getBytes());
+        segment(b, 0xE1, "Exif\0\0abcdef".getBytes());
+        segment(b, 0xDB, new byte[4]);
+        // SOF2: precision, height 600, width 800, one component
+        segment(b, 0xC2, new byte[]{8, 0x02, 0x58, 0x03, 0x20, 1, 1, 0x11, 0});
+
+        ImageHeader header = ImageHeader.sniff(Arrays.copyOf(b.array(), b.position()));
+        assertEquals(ImageHeader.JPEG, header.getFormat());
+        assertEquals(800, header.getWidth());
+        assertEquals(600, header.getHeight());
+        assertFalse(header.isAlphaPossible());
+    }
+
+    @Test
+    void truncatedOrUnknownInputIsUnknown() throws IOException {
+        byte[] png = png(new BufferedImage(4, 4, BufferedImage.TYPE_INT_RGB));
+        byte[][] inputs = {
+                new byte[0],
+                "GIF89a not really".getBytes(),
+                Arrays.copyOf(png, 20),
+                {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0, 0x00, 0x10, 'J'},
+                {(byte) 0xFF, (byte) 0xD8, 0x12, 0x34, 0x56}
+        };
+        for (byte[] input : inputs) {
+            ImageHeader header = ImageHeader.sniff(input);
+            assertFalse(header.isKnown(), Arrays.toString(input));
+            assertEquals(-1, header.pixelCount());
+            assertTrue(header.isAlphaPossible());
+        }
+    }
+
+    @Test
+    void pngDimensionAboveIntRangeIsRejected() throws IOException {
+        byte[] bytes = png(new BufferedImage(4, 4, BufferedImage.TYPE_INT_RGB));
+        byte[] wide = bytes.clone();
+        ByteBuffer.wrap(wide).putInt(16, 0x80000000);
+        byte[] tall = bytes.clone();
+        ByteBuffer.wrap(tall).putInt(20, 0xFFFFFFFF);
+        byte[] empty = bytes.clone();
+        ByteBuffer.wrap(empty).putInt(16, 0);
+
+        assertThrows(IllegalArgumentException.class, () -> ImageHeader.sniff(wide));
+        assertThrows(IllegalArgumentException.class, () -> ImageHeader.sniff(tall));
+        assertThrows(IllegalArgumentException.class, () -> ImageHeader.sniff(empty));
+    }
+
+    private static byte[] png(BufferedImage image) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+
+    /* marker, big-endian length including itself, payload */
+    private static void segment(ByteBuffer b, int marker, byte[] payload) {
+        b.put((byte) 0xFF).put((byte) marker).putShort((short) (payload.length + 2)).put(payload);
+    }
+
+    private static int indexOf(byte[] bytes, String ascii) {
+        outer:
+        for (int i = 0; i + ascii.length() <= bytes.length; i++) {
+            for (int j = 0; j < ascii.length(); j++) {
+                if (bytes[i + j] != ascii.charAt(j)) continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
+}
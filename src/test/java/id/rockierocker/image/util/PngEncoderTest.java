@@ -0,0 +1,62 @@
+package id.rockierocker.image.util;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PngEncoderTest {
+
+    @Test
+    void roundTripsPixelExact() throws IOException {
+        for (int size : new int[]{1, 17}) {
+            for (int type : new int[]{BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_INT_RGB,
+                    BufferedImage.TYPE_4BYTE_ABGR, BufferedImage.TYPE_3BYTE_BGR}) {
+                assertRoundTrip(noise(size, type));
+            }
+        }
+    }
+
+    @Test
+    void roundTripsAboveTheParallelThreshold() throws IOException {
+        // 400x400 ARGB is over PARALLEL_MIN_BYTES, multi-core runs filter and deflate it in chunks
+        assertRoundTrip(noise(400, BufferedImage.TYPE_INT_ARGB));
+    }
+
+    private static void assertRoundTrip(BufferedImage image) throws IOException {
+        for (PngEncoder encoder : new PngEncoder[]{PngEncoder.FAST, PngEncoder.DEFAULT, PngEncoder.SMALLEST}) {
+            BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(encoder.encode(image)));
+            assertEquals(image.getWidth(), decoded.getWidth());
+            assertEquals(image.getHeight(), decoded.getHeight());
+            assertArrayEquals(pixels(image), pixels(decoded), "type " + image.getType() + ", " + image.getWidth() + "px");
+        }
+    }
+
+    /* random pixels with flat runs mixed in, so every filter type wins somewhere */
+    private static BufferedImage noise(int size, int type) {
+        BufferedImage image = new BufferedImage(size, size, type);
+        Random random = new Random(size);
+        for (int y = 0; y < size; y++) {
+            int flat = random.nextInt();
+            for (int x = 0; x < size; x++) {
+                image.setRGB(x, y, (x + y) % 7 < 3 ? flat : random.nextInt());
+            }
+        }
+        return image;
+    }
+
+    private static int[] pixels(BufferedImage image) {
+        int w = image.getWidth();
+        int[] pixels = image.getRGB(0, 0, w, image.getHeight(), null, 0, w);
+        if (!image.getColorModel().hasAlpha()) {
+            for (int i = 0; i < pixels.length; i++) pixels[i] |= 0xFF000000;
+        }
+        return pixels;
+    }
+}